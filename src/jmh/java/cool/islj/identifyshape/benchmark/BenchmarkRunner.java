@@ -0,0 +1,28 @@
+package cool.islj.identifyshape.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口，固定挂上GC分析器以输出分配速率（gc.alloc.rate.norm），其余参数同JMH命令行，例如：
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="IdentifyBenchmark.curveIntersection -p sketch=synthetic:1000:100"
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLineOptions);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            builder.include(IdentifyBenchmark.class.getSimpleName());
+        }
+        builder.addProfiler(GCProfiler.class);
+        // 分叉出的JVM同样加载Vector API模块，否则GeometryKernels退回标量实现
+        builder.jvmArgsAppend("--add-modules", "jdk.incubator.vector");
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,171 @@
+package cool.islj.identifyshape.benchmark;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.impl.IdentifyImpl;
+import cool.islj.identifyshape.impl.RecognitionListener;
+import cool.islj.identifyshape.impl.Simplifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 识别流程各阶段的基准测试，每个阶段的输入都是上一阶段在Setup中算好的结果，
+ * 另有endToEnd覆盖从原始点集到箭头的完整流程
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdentifyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SketchState {
+
+        /**
+         * 类路径下的测试文件，或synthetic:笔画数:每笔点数[:种子]，可用-p sketch=...覆盖
+         */
+        @Param({"test/arrows.json", "test/flag.json", "synthetic:10:100", "synthetic:10:1000", "synthetic:100:100"})
+        public String sketch;
+
+        /**
+         * 平滑使用的简化策略：window、douglas-peucker或visvalingam-whyatt，可用-p simplifier=...比较
+         */
+        @Param({"window"})
+        public String simplifier;
+
+        IdentifyImpl identifyService;
+
+        SketchData data;
+
+        List<Point> allPoints;
+
+        List<List<Point>> smoothedStrokes;
+
+        List<Segment> splitSegments;
+
+        List<Segment> extendedSegments;
+
+        List<Segment> interruptedSegments;
+
+        Map<Point, List<Segment>> shapes;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            identifyService = new IdentifyImpl(RecognitionListener.NONE, switch (simplifier) {
+                case "window" -> Simplifier.WINDOW;
+                case "douglas-peucker" -> Simplifier.DOUGLAS_PEUCKER;
+                case "visvalingam-whyatt" -> Simplifier.VISVALINGAM_WHYATT;
+                default -> throw new IllegalArgumentException("未知的简化策略: " + simplifier);
+            });
+            data = SketchData.of(sketch);
+            allPoints = data.strokes.stream().flatMap(Collection::stream).toList();
+
+            smoothedStrokes = new ArrayList<>();
+            splitSegments = new ArrayList<>();
+            for (List<Point> points : data.strokes) {
+                List<Point> smoothed = identifyService.smooth(points, data.pixelDistance);
+                smoothedStrokes.add(smoothed);
+                List<Segment> segments = identifyService.split(smoothed);
+                segments.forEach(identifyService::judgeStraightOrCurve);
+                splitSegments.addAll(segments);
+            }
+
+            extendedSegments = copy(splitSegments);
+            extendedSegments.forEach(segment -> identifyService.extendSegment(allPoints, segment));
+            interruptedSegments = identifyService.curveIntersection(extendedSegments);
+            shapes = identifyService.constructShape(interruptedSegments);
+        }
+    }
+
+    /**
+     * extendSegment会修改线段，每次调用前重新复制一份切割后的线段
+     */
+    @State(Scope.Thread)
+    public static class ExtendState {
+
+        List<Segment> segments;
+
+        @Setup(Level.Invocation)
+        public void setup(SketchState state) {
+            segments = copy(state.splitSegments);
+        }
+    }
+
+    @Benchmark
+    public void smooth(SketchState state, Blackhole blackhole) {
+        for (List<Point> points : state.data.strokes) {
+            blackhole.consume(state.identifyService.smooth(points, state.data.pixelDistance));
+        }
+    }
+
+    @Benchmark
+    public void split(SketchState state, Blackhole blackhole) {
+        for (List<Point> points : state.smoothedStrokes) {
+            blackhole.consume(state.identifyService.split(points));
+        }
+    }
+
+    @Benchmark
+    public void judgeStraightOrCurve(SketchState state, Blackhole blackhole) {
+        for (Segment segment : state.splitSegments) {
+            state.identifyService.judgeStraightOrCurve(segment);
+            blackhole.consume(segment.getShape());
+        }
+    }
+
+    @Benchmark
+    public void extendSegment(SketchState state, ExtendState extendState, Blackhole blackhole) {
+        for (Segment segment : extendState.segments) {
+            state.identifyService.extendSegment(state.allPoints, segment);
+            blackhole.consume(segment);
+        }
+    }
+
+    @Benchmark
+    public List<Segment> curveIntersection(SketchState state) {
+        return state.identifyService.curveIntersection(state.extendedSegments);
+    }
+
+    @Benchmark
+    public Map<Point, List<Segment>> constructShape(SketchState state) {
+        return state.identifyService.constructShape(state.interruptedSegments);
+    }
+
+    @Benchmark
+    public Map<Segment, List<Segment>> findArrows(SketchState state) {
+        return state.identifyService.findArrows(state.interruptedSegments, state.shapes);
+    }
+
+    @Benchmark
+    public RecognitionResult endToEnd(SketchState state) {
+        return state.identifyService.recognize(state.data.strokes, state.data.pixelDistance);
+    }
+
+    private static List<Segment> copy(List<Segment> segments) {
+        List<Segment> result = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            result.add(new Segment(segment.getBeginPoint(), segment.getEndPoint(), segment.getOldBeginPoint(),
+                    segment.getOldEndPoint(), new ArrayList<>(segment.getAllPoints()), segment.getShape()));
+        }
+        return result;
+    }
+}
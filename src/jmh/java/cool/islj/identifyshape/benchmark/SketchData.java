@@ -0,0 +1,110 @@
+package cool.islj.identifyshape.benchmark;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.Sketch;
+import cool.islj.identifyshape.impl.StrokeReader;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试用的草图数据：内置的测试文件，或按种子生成的合成草图
+ */
+public class SketchData {
+
+    private static final String SYNTHETIC_PREFIX = "synthetic:";
+
+    /**
+     * 每一笔的原始点集
+     */
+    final List<List<Point>> strokes;
+
+    /**
+     * 每个像素代表的距离
+     */
+    final double pixelDistance;
+
+    SketchData(List<List<Point>> strokes, double pixelDistance) {
+        this.strokes = strokes;
+        this.pixelDistance = pixelDistance;
+    }
+
+    /**
+     * 按描述加载草图
+     *
+     * @param sketch 类路径下的文件（如test/flag.json），或synthetic:笔画数:每笔点数[:种子]
+     * @return 草图数据
+     */
+    static SketchData of(String sketch) throws Exception {
+        if (sketch.startsWith(SYNTHETIC_PREFIX)) {
+            String[] parts = sketch.substring(SYNTHETIC_PREFIX.length()).split(":");
+            long seed = parts.length > 2 ? Long.parseLong(parts[2]) : 42L;
+            return synthetic(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), seed);
+        }
+        return load(sketch);
+    }
+
+    /**
+     * 读取类路径下的测试数据，兼容arrows.json的数组格式和flag.json的{"allcoords": [...]}格式
+     */
+    static SketchData load(String resourcePath) throws Exception {
+        ClassPathResource resource = new ClassPathResource(resourcePath);
+        try (StrokeReader reader = new StrokeReader(new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8)))) {
+            Sketch sketch = reader.next();
+            List<List<Point>> strokes = sketch.getStrokes().stream().map(PointBuffer::toPoints).toList();
+            return new SketchData(strokes, sketch.getPixelDistance());
+        }
+    }
+
+    /**
+     * 生成合成草图：矩形、圆、折线箭头和直线随机混合，带少量手抖噪声。
+     * 画布边长随笔画数的平方根增长，使笔画密度大致不变
+     *
+     * @param strokeCount     笔画数
+     * @param pointsPerStroke 每笔的点数
+     * @param seed            随机种子，相同参数生成相同草图
+     */
+    static SketchData synthetic(int strokeCount, int pointsPerStroke, long seed) {
+        Random random = new Random(seed);
+        double pixelDistance = 1d;
+        // 每笔的尺寸固定，点越多采样越密
+        double strokeSize = 200 * pixelDistance;
+        double step = strokeSize / pointsPerStroke * 4;
+        double canvasSize = strokeSize * Math.sqrt(strokeCount) * 2;
+        double noise = pixelDistance * 0.5;
+
+        List<List<Point>> strokes = new ArrayList<>(strokeCount);
+        for (int s = 0; s < strokeCount; s++) {
+            double x = 12_690_000 + random.nextDouble() * canvasSize;
+            double y = 5_610_000 + random.nextDouble() * canvasSize;
+            double angle = random.nextDouble() * Math.PI * 2;
+            int kind = random.nextInt(4);
+
+            List<Point> points = new ArrayList<>(pointsPerStroke);
+            for (int i = 0; i < pointsPerStroke; i++) {
+                switch (kind) {
+                    // 矩形：每1/4的点转90°
+                    case 0 -> angle += i > 0 && i % Math.max(1, pointsPerStroke / 4) == 0 ? Math.PI / 2 : 0;
+                    // 圆
+                    case 1 -> angle += Math.PI * 2 / pointsPerStroke;
+                    // 箭头一侧的折线：中点处折返
+                    case 2 -> angle += i == pointsPerStroke / 2 ? Math.PI * 0.8 : 0;
+                    // 直线
+                    default -> {
+                    }
+                }
+                x += Math.cos(angle) * step + random.nextGaussian() * noise;
+                y += Math.sin(angle) * step + random.nextGaussian() * noise;
+                points.add(new Point(x, y));
+            }
+            strokes.add(points);
+        }
+        return new SketchData(strokes, pixelDistance);
+    }
+}
@@ -0,0 +1,130 @@
+package cool.islj.identifyshape.entry;
+
+import cool.islj.identifyshape.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 紧凑存储的草图：所有笔画的点以草图外接矩形的左下角为原点，按float保存在同一对数组中，
+ * 内存约为每笔一个double数组的PointBuffer的一半，适合批量任务中大量草图常驻内存。
+ * 一幅草图的范围只有几公里，float的舍入误差（毫米级）远小于识别的容差，
+ * 构造时会检查误差不超过容差的1%，否则抛出异常
+ */
+public final class CompactSketch {
+
+    /**
+     * float舍入误差占容差（DEVIATION_PIXEL * pixelDistance）的最大比例
+     */
+    private static final double MAX_ERROR_RATIO = 0.01;
+
+    private final double originX;
+
+    private final double originY;
+
+    private final double pixelDistance;
+
+    private final float[] xs;
+
+    private final float[] ys;
+
+    /**
+     * strokeEnds[i]为第i笔最后一个点的下一个下标
+     */
+    private final int[] strokeEnds;
+
+    private CompactSketch(double originX, double originY, double pixelDistance, float[] xs, float[] ys, int[] strokeEnds) {
+        this.originX = originX;
+        this.originY = originY;
+        this.pixelDistance = pixelDistance;
+        this.xs = xs;
+        this.ys = ys;
+        this.strokeEnds = strokeEnds;
+    }
+
+    /**
+     * @throws IllegalArgumentException 草图范围过大，float保存的误差超过容差的1%
+     */
+    public static CompactSketch of(Sketch sketch) {
+        List<PointBuffer> strokes = sketch.getStrokes();
+        double xMin = Double.POSITIVE_INFINITY, yMin = Double.POSITIVE_INFINITY;
+        double xMax = Double.NEGATIVE_INFINITY, yMax = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (PointBuffer stroke : strokes) {
+            for (int i = 0; i < stroke.size(); i++) {
+                xMin = Math.min(xMin, stroke.x(i));
+                yMin = Math.min(yMin, stroke.y(i));
+                xMax = Math.max(xMax, stroke.x(i));
+                yMax = Math.max(yMax, stroke.y(i));
+            }
+            count += stroke.size();
+        }
+        if (count == 0) {
+            xMin = yMin = xMax = yMax = 0;
+        }
+        double extent = Math.max(xMax - xMin, yMax - yMin);
+        double maxError = Math.ulp((float) extent) / 2;
+        if (!(maxError <= Config.DEVIATION_PIXEL * sketch.getPixelDistance() * MAX_ERROR_RATIO)) {
+            throw new IllegalArgumentException("草图范围" + extent + "过大，无法按float保存");
+        }
+
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        int[] strokeEnds = new int[strokes.size()];
+        int index = 0;
+        for (int n = 0; n < strokes.size(); n++) {
+            PointBuffer stroke = strokes.get(n);
+            for (int i = 0; i < stroke.size(); i++) {
+                xs[index] = (float) (stroke.x(i) - xMin);
+                ys[index] = (float) (stroke.y(i) - yMin);
+                index++;
+            }
+            strokeEnds[n] = index;
+        }
+        return new CompactSketch(xMin, yMin, sketch.getPixelDistance(), xs, ys, strokeEnds);
+    }
+
+    public double getOriginX() {
+        return originX;
+    }
+
+    public double getOriginY() {
+        return originY;
+    }
+
+    public double getPixelDistance() {
+        return pixelDistance;
+    }
+
+    public int strokeCount() {
+        return strokeEnds.length;
+    }
+
+    public int pointCount() {
+        return xs.length;
+    }
+
+    /**
+     * @return 第index笔的点集，坐标相对于原点
+     */
+    public PointBuffer localStroke(int index) {
+        int from = index == 0 ? 0 : strokeEnds[index - 1];
+        int to = strokeEnds[index];
+        PointBuffer stroke = new PointBuffer(to - from);
+        for (int i = from; i < to; i++) {
+            stroke.add(xs[i], ys[i]);
+        }
+        return stroke;
+    }
+
+    /**
+     * @return 坐标相对于原点的草图，识别时临时创建，用完即可丢弃
+     */
+    public Sketch toLocalSketch() {
+        List<PointBuffer> strokes = new ArrayList<>(strokeEnds.length);
+        for (int n = 0; n < strokeEnds.length; n++) {
+            strokes.add(localStroke(n));
+        }
+        return new Sketch(strokes, pixelDistance);
+    }
+}
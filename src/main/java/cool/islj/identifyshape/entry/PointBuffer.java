@@ -0,0 +1,105 @@
+package cool.islj.identifyshape.entry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 坐标点集的数组存储，x、y分别存放在两个double数组中，
+ * 长笔画的点不必各自成为一个Point对象
+ */
+public class PointBuffer {
+
+    private double[] xs;
+
+    private double[] ys;
+
+    private int size;
+
+    public PointBuffer() {
+        this(16);
+    }
+
+    public PointBuffer(int capacity) {
+        xs = new double[Math.max(capacity, 4)];
+        ys = new double[Math.max(capacity, 4)];
+    }
+
+    public static PointBuffer of(List<Point> points) {
+        PointBuffer buffer = new PointBuffer(points.size());
+        for (Point point : points) {
+            buffer.add(point.getX(), point.getY());
+        }
+        return buffer;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double x(int index) {
+        return xs[index];
+    }
+
+    public double y(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @return x坐标数组，只有前size()个有效，直接返回内部数组，供批量计算使用
+     */
+    public double[] xs() {
+        return xs;
+    }
+
+    /**
+     * @return y坐标数组，只有前size()个有效
+     */
+    public double[] ys() {
+        return ys;
+    }
+
+    public void add(double x, double y) {
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    /**
+     * 追加另一个点集中的第index个点
+     */
+    public void add(PointBuffer other, int index) {
+        add(other.xs[index], other.ys[index]);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public Point get(int index) {
+        return new Point(xs[index], ys[index]);
+    }
+
+    /**
+     * 将[from, to)范围内的点转换为Point列表
+     */
+    public List<Point> toPoints(int from, int to) {
+        List<Point> points = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            points.add(new Point(xs[i], ys[i]));
+        }
+        return points;
+    }
+
+    public List<Point> toPoints() {
+        return toPoints(0, size);
+    }
+}
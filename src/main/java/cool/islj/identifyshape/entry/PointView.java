@@ -0,0 +1,171 @@
+package cool.islj.identifyshape.entry;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * 线段点集的轻量视图：共用的点列表store中[from, to)范围内的点，前后可以各附加一个点（延长后的端点、打断处的交点）。
+ * 截取子视图、附加头尾点都只创建新的视图对象，不复制点，打断线段是O(1)的。
+ * 视图可以当作普通的List修改，第一次修改时把点复制为自己独占的列表（写时复制），不影响共用store的其他视图。
+ * 创建视图之后不能再直接修改store
+ */
+public final class PointView extends AbstractList<Point> implements RandomAccess {
+
+    private List<Point> store;
+
+    private int from;
+
+    private int to;
+
+    private Point head;
+
+    private Point tail;
+
+    /**
+     * store是否为此视图独占（修改时复制出来的），从此视图派生出新的视图后不再独占
+     */
+    private boolean owned;
+
+    private PointView(List<Point> store, int from, int to, Point head, Point tail) {
+        this.store = store;
+        this.from = from;
+        this.to = to;
+        this.head = head;
+        this.tail = tail;
+    }
+
+    /**
+     * @return store中[from, to)范围内的点的视图，不复制
+     */
+    public static PointView view(List<Point> store, int from, int to) {
+        Objects.checkFromToIndex(from, to, store.size());
+        return new PointView(store, from, to, null, null);
+    }
+
+    /**
+     * @return points本身是视图时直接返回，否则复制一次作为视图的store
+     */
+    public static PointView of(List<Point> points) {
+        if (points instanceof PointView view) {
+            return view;
+        }
+        return new PointView(new ArrayList<>(points), 0, points.size(), null, null);
+    }
+
+    @Override
+    public Point get(int index) {
+        int storeIndex = head != null ? index - 1 : index;
+        if (storeIndex >= 0 && storeIndex < to - from) {
+            return store.get(from + storeIndex);
+        }
+        if (storeIndex == -1 && head != null) {
+            return head;
+        }
+        if (storeIndex == to - from && tail != null) {
+            return tail;
+        }
+        throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+    }
+
+    @Override
+    public int size() {
+        return to - from + (head != null ? 1 : 0) + (tail != null ? 1 : 0);
+    }
+
+    /**
+     * @return [fromIndex, toIndex)范围的子视图，与此视图共用store
+     */
+    public PointView subView(int fromIndex, int toIndex) {
+        int size = size();
+        Objects.checkFromToIndex(fromIndex, toIndex, size);
+        owned = false;
+        int headCount = head != null ? 1 : 0;
+        int storeSize = to - from;
+        int newFrom = from + Math.clamp(fromIndex - headCount, 0, storeSize);
+        int newTo = from + Math.clamp(toIndex - headCount, 0, storeSize);
+        Point newHead = head != null && fromIndex == 0 && toIndex > 0 ? head : null;
+        Point newTail = tail != null && toIndex == size && fromIndex < size ? tail : null;
+        return new PointView(store, newFrom, newTo, newHead, newTail);
+    }
+
+    /**
+     * @return 与此视图内容相同的新视图，修改任意一个都不影响另一个。
+     * 此视图本来就不独占store时不写任何字段，多个线程可以同时从同一个不再修改的视图复制
+     */
+    public PointView copy() {
+        if (owned) {
+            owned = false;
+        }
+        return new PointView(store, from, to, head, tail);
+    }
+
+    /**
+     * @return 在开头附加point的视图，已经附加过头点时复制为新的store
+     */
+    public PointView withHead(Point point) {
+        if (head == null) {
+            owned = false;
+            return new PointView(store, from, to, point, tail);
+        }
+        List<Point> points = new ArrayList<>(size() + 1);
+        points.add(point);
+        points.addAll(this);
+        return new PointView(points, 0, points.size(), null, null);
+    }
+
+    /**
+     * @return 在末尾附加point的视图，已经附加过尾点时复制为新的store
+     */
+    public PointView withTail(Point point) {
+        if (tail == null) {
+            owned = false;
+            return new PointView(store, from, to, head, point);
+        }
+        List<Point> points = new ArrayList<>(size() + 1);
+        points.addAll(this);
+        points.add(point);
+        return new PointView(points, 0, points.size(), null, null);
+    }
+
+    @Override
+    public Point set(int index, Point element) {
+        Objects.checkIndex(index, size());
+        detach();
+        return store.set(index, element);
+    }
+
+    @Override
+    public void add(int index, Point element) {
+        Objects.checkIndex(index, size() + 1);
+        detach();
+        store.add(index, element);
+        to++;
+        modCount++;
+    }
+
+    @Override
+    public Point remove(int index) {
+        Objects.checkIndex(index, size());
+        detach();
+        to--;
+        modCount++;
+        return store.remove(index);
+    }
+
+    /**
+     * 修改前把点复制为独占的store，之后下标与store一一对应
+     */
+    private void detach() {
+        if (!owned) {
+            store = new ArrayList<>(this);
+            from = 0;
+            to = store.size();
+            head = null;
+            tail = null;
+            owned = true;
+        }
+    }
+}
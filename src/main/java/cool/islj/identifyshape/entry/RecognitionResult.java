@@ -0,0 +1,38 @@
+package cool.islj.identifyshape.entry;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RecognitionResult {
+
+    /**
+     * 在交点处打断后的线段
+     */
+    List<Segment> segments;
+
+    /**
+     * 封闭图形
+     */
+    Map<Point, List<Segment>> shapes;
+
+    /**
+     * 箭头，<箭杆，组成箭头的线段>
+     */
+    Map<Segment, List<Segment>> arrows;
+
+    /**
+     * 是否完整。时间预算用完时为false，此时只有已完成的阶段的结果，例如只有线段没有封闭图形
+     */
+    boolean complete = true;
+
+    public RecognitionResult(List<Segment> segments, Map<Point, List<Segment>> shapes, Map<Segment, List<Segment>> arrows) {
+        this(segments, shapes, arrows, true);
+    }
+}
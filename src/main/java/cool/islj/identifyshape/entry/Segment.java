@@ -19,6 +19,9 @@ public class Segment {
 
     Point oldEndPoint;
 
+    /**
+     * 线段的点集，识别流程中是{@link PointView}，打断得到的线段与原线段共用同一份点
+     */
     List<Point> allPoints;
 
     Shape shape;
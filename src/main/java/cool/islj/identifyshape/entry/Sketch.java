@@ -0,0 +1,26 @@
+package cool.islj.identifyshape.entry;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 一幅草图：所有笔画及每个像素代表的距离
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Sketch {
+
+    /**
+     * 每一笔的原始点集
+     */
+    List<PointBuffer> strokes;
+
+    /**
+     * 每个像素代表的距离
+     */
+    double pixelDistance;
+}
@@ -0,0 +1,178 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把曲线拟合为若干段直线和圆弧，再按弦高重新取点：
+ * <ul>
+ *     <li>从当前点开始，先倍增再二分，找到能用一段直线或圆弧（过首、中、尾三点的圆）覆盖的最远点，
+ *     覆盖指各点到首尾两点间线段的距离不超过容差的一半，或者各点及相邻两点间的边到圆的距离不超过容差的一半，
+ *     且圆弧上的点按同一方向转动、转过的角度小于一周；</li>
+ *     <li>直线只保留端点；圆弧按弦到弧的最大距离（弦高）不超过容差的一半均匀取点，半径越大取的点越少。</li>
+ * </ul>
+ * 结果与原曲线的偏差不超过容差，首尾点与原曲线相同，求交时子线段数量从原来的点数降到圆弧数乘以每段的取点数。
+ * 每个点在倍增和二分中被检查O(log n)次，共O(n log n)
+ */
+final class ArcFitter implements CurveFitter {
+
+    /**
+     * 圆弧每一步最多转过的角度，防止容差接近半径时取点过少
+     */
+    private static final double MAX_STEP = Math.PI / 4;
+
+    @Override
+    public List<Point> fit(PointBuffer points, int from, int to, double tolerance) {
+        double fitTolerance = tolerance / 2;
+        List<Point> result = new ArrayList<>();
+        result.add(points.get(from));
+        Arc arc = new Arc();
+        int start = from;
+        while (start < to) {
+            // 倍增找到第一个覆盖不了的点，再在其间二分
+            int good = start + 1, bad = to + 1;
+            for (int step = 2; start + step <= to; step *= 2) {
+                if (fits(points, start, start + step, fitTolerance, arc)) {
+                    good = start + step;
+                } else {
+                    bad = start + step;
+                    break;
+                }
+            }
+            if (bad == to + 1 && good < to && fits(points, start, to, fitTolerance, arc)) {
+                good = to;
+            }
+            while (bad - good > 1 && good < to) {
+                int middle = (good + bad) >>> 1;
+                if (fits(points, start, middle, fitTolerance, arc)) {
+                    good = middle;
+                } else {
+                    bad = middle;
+                }
+            }
+            fits(points, start, good, fitTolerance, arc);
+            if (!arc.straight) {
+                sample(arc, tolerance - fitTolerance, result);
+            }
+            result.add(points.get(good));
+            start = good;
+        }
+        return result;
+    }
+
+    /**
+     * 判断[start, end]能否用一段直线或圆弧覆盖，能覆盖时把拟合结果写入arc
+     */
+    private static boolean fits(PointBuffer points, int start, int end, double tolerance, Arc arc) {
+        // 以起点为原点计算，坐标在1e7量级，直接平方会损失精度
+        double originX = points.x(start);
+        double originY = points.y(start);
+        double endX = points.x(end) - originX;
+        double endY = points.y(end) - originY;
+        double chord = GeometryKernels.length(endX, endY);
+
+        if (chord > 0) {
+            // 到弦（线段，不是所在的直线）的距离，投影落在弦外的点按到端点的距离算，折返的点不能算作直线
+            boolean straight = true;
+            for (int i = start + 1; i < end && straight; i++) {
+                straight = distanceToEdge(points.x(i) - originX, points.y(i) - originY, 0, 0, endX, endY) <= tolerance;
+            }
+            if (straight) {
+                arc.straight = true;
+                return true;
+            }
+        } else if (end - start == 1) {
+            arc.straight = true;
+            return true;
+        }
+
+        // 过首、中、尾三点的圆
+        int middle = (start + end) >>> 1;
+        double middleX = points.x(middle) - originX;
+        double middleY = points.y(middle) - originY;
+        double d = 2 * (middleX * endY - middleY * endX);
+        if (d == 0) {
+            return false;
+        }
+        double middleSquare = middleX * middleX + middleY * middleY;
+        double endSquare = endX * endX + endY * endY;
+        double centerX = (endY * middleSquare - middleY * endSquare) / d;
+        double centerY = (middleX * endSquare - endX * middleSquare) / d;
+        double radius = GeometryKernels.length(centerX, centerY);
+
+        // 各点到圆的距离不超过容差，相邻两点间的边向圆内凹进的距离也不超过容差，且绕圆心按同一方向转动。
+        // 边离圆心最远处是端点，所以只需检查最近处
+        double direction = Math.signum(d);
+        double sweep = 0;
+        double previousX = -centerX, previousY = -centerY;
+        for (int i = start + 1; i <= end; i++) {
+            double x = points.x(i) - originX - centerX;
+            double y = points.y(i) - originY - centerY;
+            if (Math.abs(GeometryKernels.length(x, y) - radius) > tolerance ||
+                    radius - distanceToEdge(0, 0, previousX, previousY, x, y) > tolerance) {
+                return false;
+            }
+            double turn = Math.atan2(previousX * y - previousY * x, previousX * x + previousY * y);
+            if (turn * direction < 0) {
+                return false;
+            }
+            sweep += turn;
+            previousX = x;
+            previousY = y;
+        }
+        if (Math.abs(sweep) >= 2 * Math.PI) {
+            return false;
+        }
+        arc.straight = false;
+        arc.centerX = originX + centerX;
+        arc.centerY = originY + centerY;
+        arc.radius = radius;
+        arc.startAngle = Math.atan2(-centerY, -centerX);
+        arc.sweep = sweep;
+        return true;
+    }
+
+    /**
+     * 点(x, y)到线段(x1, y1)-(x2, y2)的距离
+     */
+    private static double distanceToEdge(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double t = (x - x1) * dx + (y - y1) * dy;
+        double lengthSquare = dx * dx + dy * dy;
+        if (t <= 0 || lengthSquare == 0) {
+            return GeometryKernels.length(x - x1, y - y1);
+        }
+        if (t >= lengthSquare) {
+            return GeometryKernels.length(x - x2, y - y2);
+        }
+        return Math.abs(dx * (y - y1) - dy * (x - x1)) / Math.sqrt(lengthSquare);
+    }
+
+    /**
+     * 在圆弧内部均匀取点（不含首尾），使弦高不超过容差
+     */
+    private static void sample(Arc arc, double tolerance, List<Point> result) {
+        double step = tolerance >= arc.radius ? MAX_STEP : Math.min(MAX_STEP, 2 * Math.acos(1 - tolerance / arc.radius));
+        int count = (int) Math.ceil(Math.abs(arc.sweep) / step);
+        for (int k = 1; k < count; k++) {
+            double angle = arc.startAngle + arc.sweep * k / count;
+            result.add(new Point(arc.centerX + arc.radius * Math.cos(angle), arc.centerY + arc.radius * Math.sin(angle)));
+        }
+    }
+
+    /**
+     * 最近一次拟合的结果
+     */
+    private static final class Arc {
+        boolean straight;
+        double centerX;
+        double centerY;
+        double radius;
+        double startAngle;
+        double sweep;
+    }
+}
@@ -0,0 +1,268 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.Segment;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 把各次识别的跟踪记录追加到同一个文件中。识别线程只复制坐标放入队列，格式化和写文件都在后台线程中进行；
+ * 队列满时丢弃新的记录，不阻塞识别，丢弃的数量见{@link #droppedCount()}。
+ * 文件为逗号分隔的列式文本，每个点一行：
+ * <pre>
+ * request,stage,group,item,shape,index,x,y
+ * </pre>
+ * stage见{@link RecognitionTrace.Stage}，item为组内线段的序号（原始点集为0），
+ * shape为STRAIGHT或CURVE（原始点集为空），index为点在线段中的序号。
+ * 线程安全，多个请求可以共用一个实例，例如只对抽样的请求调用{@link #forRequest(String)}
+ */
+public class AsyncTraceWriter implements AutoCloseable {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private static final String HEADER = "request,stage,group,item,shape,index,x,y";
+
+    /**
+     * 队列结束标记
+     */
+    private static final Entry END = new Entry(null, null, 0, 0, null, null);
+
+    private final BufferedWriter writer;
+
+    private final BlockingQueue<Entry> queue;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread thread;
+
+    /**
+     * 放入记录时持有读锁，关闭时持有写锁设置closed：关闭之后不会再有记录进入队列，结束标记是队列中的最后一个元素
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean closed;
+
+    private IOException failure;
+
+    public AsyncTraceWriter(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param file     跟踪文件，已存在时追加
+     * @param capacity 队列中最多等待写入的线段数
+     */
+    public AsyncTraceWriter(Path file, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity必须大于0: " + capacity);
+        }
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        try {
+            if (Files.size(file) == 0) {
+                writer.write(HEADER);
+                writer.newLine();
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                writer.close();
+            } catch (IOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw e;
+        }
+        queue = new ArrayBlockingQueue<>(capacity);
+        thread = Thread.ofPlatform().daemon().name("recognition-trace").start(this::drain);
+    }
+
+    /**
+     * @param requestId 请求标识，写入每一行的request列，不能包含逗号和换行
+     * @return 记录一次识别的跟踪，交给{@link IdentifyImpl#withTrace(RecognitionTrace)}
+     */
+    public RecognitionTrace forRequest(String requestId) {
+        if (requestId.indexOf(',') >= 0 || requestId.indexOf('\n') >= 0 || requestId.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("请求标识不能包含逗号和换行: " + requestId);
+        }
+        return new RequestTrace(requestId);
+    }
+
+    /**
+     * @return 因队列已满或已关闭而丢弃的线段数
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * 写完队列中已有的记录后关闭文件。等待后台线程时不响应中断，返回时文件已关闭，中断状态保留；
+     * 后台线程已异常结束时不再等待，队列中剩余的记录不会写入
+     *
+     * @throws IOException 后台写入时发生的错误
+     */
+    @Override
+    public void close() throws IOException {
+        Lock lock = closeLock.writeLock();
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        boolean interrupted = false;
+        // 后台线程已结束时没有人再取走记录，队列满也不再等待
+        while (thread.isAlive()) {
+            try {
+                if (queue.offer(END, 10, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void offer(Entry entry) {
+        Lock lock = closeLock.readLock();
+        lock.lock();
+        try {
+            if (closed || !queue.offer(entry)) {
+                dropped.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        try {
+            try {
+                for (Entry entry = queue.take(); entry != END; entry = queue.take()) {
+                    write(entry);
+                    // 空闲时刷新，运行中也能查看文件
+                    if (queue.isEmpty()) {
+                        writer.flush();
+                    }
+                }
+                writer.flush();
+            } catch (IOException | RuntimeException e) {
+                failure = e instanceof IOException io ? io : new IOException("写入跟踪文件失败", e);
+                // 写入失败后继续取走记录，close不会因队列满而阻塞
+                while (queue.take() != END) {
+                    dropped.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // 文件只在写入线程中关闭，不会在写入过程中被关闭
+            try {
+                writer.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        String prefix = entry.request + "," + entry.stage + "," + entry.group + "," + entry.item + "," + entry.shape + ",";
+        for (int i = 0; i < entry.coordinates.length / 2; i++) {
+            writer.write(prefix);
+            writer.write(Integer.toString(i));
+            writer.write(',');
+            writer.write(Double.toString(entry.coordinates[2 * i]));
+            writer.write(',');
+            writer.write(Double.toString(entry.coordinates[2 * i + 1]));
+            writer.newLine();
+        }
+    }
+
+    /**
+     * 一条线段（或一笔原始点集）的跟踪记录，坐标按x、y交替存放
+     */
+    private record Entry(String request, RecognitionTrace.Stage stage, int group, int item, String shape, double[] coordinates) {
+    }
+
+    private final class RequestTrace implements RecognitionTrace {
+
+        private final String requestId;
+
+        RequestTrace(String requestId) {
+            this.requestId = requestId;
+        }
+
+        @Override
+        public void stroke(int stroke, PointBuffer points) {
+            double[] coordinates = new double[points.size() * 2];
+            for (int i = 0; i < points.size(); i++) {
+                coordinates[2 * i] = points.x(i);
+                coordinates[2 * i + 1] = points.y(i);
+            }
+            offer(new Entry(requestId, Stage.ORIGIN, stroke, 0, "", coordinates));
+        }
+
+        @Override
+        public void segments(Stage stage, int group, List<Segment> segments) {
+            for (int item = 0; item < segments.size(); item++) {
+                Segment segment = segments.get(item);
+                List<Point> points = segment.getAllPoints();
+                double[] coordinates = new double[points.size() * 2];
+                for (int i = 0; i < points.size(); i++) {
+                    coordinates[2 * i] = points.get(i).getX();
+                    coordinates[2 * i + 1] = points.get(i).getY();
+                }
+                offer(new Entry(requestId, stage, group, item, segment.getShape() == null ? "" : segment.getShape().name(), coordinates));
+            }
+        }
+
+        @Override
+        public void shapes(Map<Point, List<Segment>> shapes) {
+            int group = 0;
+            for (List<Segment> shape : shapes.values()) {
+                segments(Stage.CONSTRUCT_SHAPE, group++, shape);
+            }
+        }
+
+        @Override
+        public void arrows(Map<Segment, List<Segment>> arrows) {
+            int group = 0;
+            for (List<Segment> arrow : arrows.values()) {
+                segments(Stage.FIND_ARROWS, group++, arrow);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Sketch;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 批量识别：各草图互不相关，分发到虚拟线程上并行识别。
+ * 同时在识别的草图数量有上限，结果没有被取走时不再从输入中读取新的草图，
+ * 所以输入可以是逐条读取的大文件，内存中最多只有maxInFlight幅草图。
+ * 结果按输入顺序返回。
+ * IdentifyImpl是无状态的，所有线程共用同一个实例
+ */
+public class BatchRecognizer implements AutoCloseable {
+
+    private final IdentifyImpl identify;
+
+    private final int maxInFlight;
+
+    private final RecognitionBudget budget;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public BatchRecognizer(IdentifyImpl identify) {
+        this(identify, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * 不限时，关闭结果流时正在识别的草图随即停止
+     *
+     * @param maxInFlight 同时在识别的草图数量上限
+     */
+    public BatchRecognizer(IdentifyImpl identify, int maxInFlight) {
+        this(identify, maxInFlight, RecognitionBudget.INTERRUPTIBLE);
+    }
+
+    /**
+     * @param maxInFlight 同时在识别的草图数量上限
+     * @param budget      每幅草图的时间预算，超时的草图返回不完整的结果，不影响其他草图。
+     *                    关闭结果流时会中断正在识别的草图，只有响应中断的预算（{@link RecognitionBudget#UNLIMITED}以外的）才会随即停止
+     */
+    public BatchRecognizer(IdentifyImpl identify, int maxInFlight, RecognitionBudget budget) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight必须大于0: " + maxInFlight);
+        }
+        this.identify = identify;
+        this.maxInFlight = maxInFlight;
+        this.budget = budget;
+    }
+
+    /**
+     * 识别所有草图
+     *
+     * @return 识别结果，与输入顺序一致
+     */
+    public List<RecognitionResult> recognizeAll(Collection<Sketch> sketches) {
+        try (Stream<RecognitionResult> results = recognize(sketches.iterator())) {
+            return results.toList();
+        }
+    }
+
+    /**
+     * 逐条识别草图。输入只在取结果的线程中读取，不需要是线程安全的
+     *
+     * @return 识别结果的流，与输入顺序一致；流被消费时才读取输入并提交识别
+     */
+    public Stream<RecognitionResult> recognize(Iterator<Sketch> sketches) {
+        ResultIterator results = new ResultIterator(sketches);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(results::cancel);
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    /**
+     * 保持最多maxInFlight个已提交的识别任务，取走队首的结果后再提交下一个
+     */
+    private final class ResultIterator implements Iterator<RecognitionResult> {
+
+        private final Iterator<Sketch> sketches;
+
+        private final Deque<Future<RecognitionResult>> inFlight = new ArrayDeque<>();
+
+        ResultIterator(Iterator<Sketch> sketches) {
+            this.sketches = sketches;
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return !inFlight.isEmpty();
+        }
+
+        @Override
+        public RecognitionResult next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return inFlight.removeFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new IllegalStateException("批量识别被中断", e);
+            } catch (ExecutionException e) {
+                cancel();
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException("识别失败", e.getCause());
+            }
+        }
+
+        private void fill() {
+            while (inFlight.size() < maxInFlight && sketches.hasNext()) {
+                Sketch sketch = sketches.next();
+                inFlight.addLast(executor.submit(() -> identify.recognize(sketch, budget)));
+            }
+        }
+
+        void cancel() {
+            inFlight.forEach(future -> future.cancel(true));
+            inFlight.clear();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.Sketch;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 以内存映射方式读取二进制草图语料文件，打开时只读尾部的索引，
+ * 读取第N幅草图时直接定位，操作系统只调入实际访问到的页。
+ * 文件格式（多字节整数和浮点数均为大端序，varint为7位一组的变长整数，坐标差值先做zigzag编码）：
+ * <pre>
+ * 文件头    int magic, int version, double scale
+ * 草图      long originX, long originY, double pixelDistance,
+ *           varint pointCount, varint strokeCount, varint[strokeCount] 每笔点数,
+ *           (varint dx, varint dy, varint ux, varint uy)[pointCount]
+ * 索引      int count, long[count] 每幅草图的偏移量
+ * 尾部      long 索引的偏移量
+ * </pre>
+ * dx、dy为定点坐标与前一个点（第一个点为原点）的差值，定点坐标除以scale后，
+ * 其double位表示再加上ux、uy即为原坐标，与写入的完全相同。映射在多个线程间共享，可以并发读取
+ */
+public class CorpusReader implements Iterable<Sketch>, AutoCloseable {
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private static final int HEADER_SIZE = 16;
+
+    private final Arena arena;
+
+    private final MemorySegment data;
+
+    private final double scale;
+
+    private final long indexOffset;
+
+    private final int count;
+
+    /**
+     * @throws IOException 文件不存在、不是草图语料文件或已损坏（例如被截断）
+     */
+    public CorpusReader(Path file) throws IOException {
+        arena = Arena.ofShared();
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            }
+            if (data.byteSize() < HEADER_SIZE + 12 || data.get(INT, 0) != CorpusWriter.MAGIC) {
+                throw new IOException("不是草图语料文件: " + file);
+            }
+            if (data.get(INT, 4) != CorpusWriter.VERSION) {
+                throw new IOException("不支持的语料文件版本: " + data.get(INT, 4));
+            }
+            scale = Double.longBitsToDouble(data.get(LONG, 8));
+            // 索引紧接在最后一幅草图之后，索引之后只有8字节的尾部
+            indexOffset = data.get(LONG, data.byteSize() - 8);
+            if (indexOffset < HEADER_SIZE || indexOffset > data.byteSize() - 12) {
+                throw new IOException("语料文件已损坏，索引偏移量越界: " + indexOffset);
+            }
+            count = data.get(INT, indexOffset);
+            if (count < 0 || indexOffset + 4 + 8L * count != data.byteSize() - 8) {
+                throw new IOException("语料文件已损坏，草图数量与索引长度不符: " + count);
+            }
+            for (int i = 0; i < count; i++) {
+                long offset = data.get(LONG, indexOffset + 4 + 8L * i);
+                // 每幅草图至少有24字节的头部和点数、笔画数两个varint
+                if (offset < HEADER_SIZE || offset + 26 > indexOffset) {
+                    throw new IOException("语料文件已损坏，第" + i + "幅草图的偏移量越界: " + offset);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 草图数量
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return 第index幅草图的点数，只读取头部
+     */
+    public long pointCount(int index) {
+        long[] position = {offset(index) + 24};
+        return readVarLong(position);
+    }
+
+    /**
+     * 解码第index幅草图
+     */
+    public Sketch get(int index) {
+        long offset = offset(index);
+        long originX = data.get(LONG, offset);
+        long originY = data.get(LONG, offset + 8);
+        double pixelDistance = Double.longBitsToDouble(data.get(LONG, offset + 16));
+        long[] position = {offset + 24};
+        readVarLong(position);
+        int strokeCount = Math.toIntExact(readVarLong(position));
+        int[] pointCounts = new int[strokeCount];
+        for (int i = 0; i < strokeCount; i++) {
+            pointCounts[i] = Math.toIntExact(readVarLong(position));
+        }
+
+        List<PointBuffer> strokes = new ArrayList<>(strokeCount);
+        long x = originX, y = originY;
+        for (int pointCount : pointCounts) {
+            PointBuffer stroke = new PointBuffer(pointCount);
+            for (int i = 0; i < pointCount; i++) {
+                x += unzigzag(readVarLong(position));
+                y += unzigzag(readVarLong(position));
+                long xBits = Double.doubleToRawLongBits(x / scale) + unzigzag(readVarLong(position));
+                long yBits = Double.doubleToRawLongBits(y / scale) + unzigzag(readVarLong(position));
+                stroke.add(Double.longBitsToDouble(xBits), Double.longBitsToDouble(yBits));
+            }
+            strokes.add(stroke);
+        }
+        return new Sketch(strokes, pixelDistance);
+    }
+
+    /**
+     * 按顺序逐幅解码，可以直接交给BatchRecognizer
+     */
+    @Override
+    public Iterator<Sketch> iterator() {
+        return new Iterator<>() {
+
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public Sketch next() {
+                if (next >= count) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    /**
+     * 解除映射，之后不能再读取
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private long offset(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("草图序号越界: " + index + "，共" + count + "幅");
+        }
+        return data.get(LONG, indexOffset + 4 + 8L * index);
+    }
+
+    private long readVarLong(long[] position) {
+        long value = 0;
+        int shift = 0;
+        long p = position[0];
+        byte b;
+        do {
+            b = data.get(ValueLayout.JAVA_BYTE, p++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        position[0] = p;
+        return value;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
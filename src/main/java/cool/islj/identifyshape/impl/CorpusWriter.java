@@ -0,0 +1,181 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.Sketch;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * 写二进制草图语料文件，格式见{@link CorpusReader}。
+ * 坐标按scale换算为定点整数，每个点只保存与前一个点的差值（zigzag变长整数），
+ * 再保存原坐标与定点坐标还原值之间相差的ulp数，读出的坐标与写入的完全相同。
+ * 识别流程对坐标的微小变化很敏感，所以不能只保存有损的定点坐标
+ */
+public class CorpusWriter implements Closeable {
+
+    static final int MAGIC = 0x49534B43;
+
+    static final int VERSION = 1;
+
+    /**
+     * 默认精度1e-6。坐标本身是这个精度的整数倍时ulp差值为0，只占1个字节
+     */
+    public static final double DEFAULT_SCALE = 1_000_000d;
+
+    private final OutputStream out;
+
+    private final double scale;
+
+    private final byte[] buffer = new byte[10];
+
+    private long position;
+
+    private long[] offsets = new long[16];
+
+    private int count;
+
+    public CorpusWriter(Path file) throws IOException {
+        this(file, DEFAULT_SCALE);
+    }
+
+    /**
+     * @param scale 坐标乘以scale后取整保存
+     */
+    public CorpusWriter(Path file, double scale) throws IOException {
+        if (!(scale > 0) || Double.isInfinite(scale)) {
+            throw new IllegalArgumentException("scale必须是正数: " + scale);
+        }
+        this.out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+        this.scale = scale;
+        writeInt(MAGIC);
+        writeInt(VERSION);
+        writeLong(Double.doubleToRawLongBits(scale));
+    }
+
+    /**
+     * 将JSON格式的草图文件转换为二进制语料文件
+     *
+     * @return 转换的草图数量
+     */
+    public static int convert(Path json, Path corpus) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(json, StandardCharsets.UTF_8);
+             StrokeReader sketches = new StrokeReader(reader);
+             CorpusWriter writer = new CorpusWriter(corpus)) {
+            while (sketches.hasNext()) {
+                writer.write(sketches.next());
+            }
+            return writer.count;
+        }
+    }
+
+    /**
+     * 追加一幅草图。头部为原点（第一个点）、pixelDistance和点数，之后为各笔点数和坐标。
+     * 先换算并检查所有坐标，有坐标无法保存时抛出异常，不写入任何内容，文件仍然完整
+     */
+    public void write(Sketch sketch) throws IOException {
+        long pointCount = 0;
+        for (PointBuffer stroke : sketch.getStrokes()) {
+            pointCount += stroke.size();
+        }
+        long[] fixed = new long[Math.toIntExact(pointCount * 2)];
+        int n = 0;
+        for (PointBuffer stroke : sketch.getStrokes()) {
+            for (int i = 0; i < stroke.size(); i++) {
+                fixed[n++] = toFixed(stroke.x(i));
+                fixed[n++] = toFixed(stroke.y(i));
+            }
+        }
+
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = position;
+        long originX = pointCount == 0 ? 0 : fixed[0];
+        long originY = pointCount == 0 ? 0 : fixed[1];
+        writeLong(originX);
+        writeLong(originY);
+        writeLong(Double.doubleToRawLongBits(sketch.getPixelDistance()));
+        writeVarLong(pointCount);
+        writeVarLong(sketch.getStrokes().size());
+        for (PointBuffer stroke : sketch.getStrokes()) {
+            writeVarLong(stroke.size());
+        }
+
+        long previousX = originX, previousY = originY;
+        n = 0;
+        for (PointBuffer stroke : sketch.getStrokes()) {
+            for (int i = 0; i < stroke.size(); i++) {
+                long x = fixed[n++];
+                long y = fixed[n++];
+                writeVarLong(zigzag(x - previousX));
+                writeVarLong(zigzag(y - previousY));
+                writeVarLong(zigzag(Double.doubleToRawLongBits(stroke.x(i)) - Double.doubleToRawLongBits(x / scale)));
+                writeVarLong(zigzag(Double.doubleToRawLongBits(stroke.y(i)) - Double.doubleToRawLongBits(y / scale)));
+                previousX = x;
+                previousY = y;
+            }
+        }
+    }
+
+    /**
+     * 写入索引（每幅草图的偏移量）和指向索引的尾部后关闭文件
+     */
+    @Override
+    public void close() throws IOException {
+        try (out) {
+            long indexOffset = position;
+            writeInt(count);
+            for (int i = 0; i < count; i++) {
+                writeLong(offsets[i]);
+            }
+            writeLong(indexOffset);
+        }
+    }
+
+    private long toFixed(double value) {
+        double fixed = Math.rint(value * scale);
+        if (!(Math.abs(fixed) < 0x1p62)) {
+            throw new IllegalArgumentException("坐标无法按scale=" + scale + "保存: " + value);
+        }
+        return (long) fixed;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        int length = 0;
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+        out.write(buffer, 0, length);
+        position += length;
+    }
+
+    private void writeInt(int value) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            buffer[i] = (byte) (value >>> (24 - 8 * i));
+        }
+        out.write(buffer, 0, 4);
+        position += 4;
+    }
+
+    private void writeLong(long value) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            buffer[i] = (byte) (value >>> (56 - 8 * i));
+        }
+        out.write(buffer, 0, 8);
+        position += 8;
+    }
+}
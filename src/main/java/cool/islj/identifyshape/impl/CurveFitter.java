@@ -0,0 +1,32 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+
+import java.util.List;
+
+/**
+ * 曲线线段的点集压缩策略。被判断为曲线的线段默认保留平滑后的所有点，
+ * 求交时每个相邻点对都是一个子线段，曲线因此是求交最耗时的输入。实现必须是无状态、线程安全的
+ */
+public interface CurveFitter {
+
+    /**
+     * 不压缩，保留平滑后的所有点
+     */
+    CurveFitter NONE = (points, from, to, tolerance) -> points.toPoints(from, to + 1);
+
+    /**
+     * 拟合为若干段圆弧，每段圆弧按弦高不超过容差重新取点，见{@link ArcFitter}
+     */
+    CurveFitter ARCS = new ArcFitter();
+
+    /**
+     * @param points    平滑后的点集
+     * @param from      曲线的第一个点
+     * @param to        曲线的最后一个点（含）
+     * @param tolerance 允许的偏差距离
+     * @return 曲线的点集，首尾点与points[from]、points[to]相同
+     */
+    List<Point> fit(PointBuffer points, int from, int to, double tolerance);
+}
@@ -0,0 +1,90 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.PointBuffer;
+
+/**
+ * Douglas–Peucker：区间内离头尾连线最远的点超过阈值时保留此点，并对两侧的子区间继续处理。
+ * 待处理的区间放在显式栈中，长笔画不会栈溢出。
+ * 每层区间扫描一遍，一般为O(n log n)，每次都只切下一个点的退化情况为O(n²)
+ */
+final class DouglasPeuckerSimplifier implements Simplifier {
+
+    @Override
+    public int[] simplify(PointBuffer points, double tolerance) {
+        int size = points.size();
+        if (size <= 2) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        double[] xs = points.xs();
+        double[] ys = points.ys();
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+
+        // 栈中每两个数为一个区间[from, to]
+        IntList stack = new IntList();
+        stack.add(0);
+        stack.add(size - 1);
+        while (!stack.isEmpty()) {
+            int to = stack.removeLast();
+            int from = stack.removeLast();
+            if (to - from < 2) {
+                continue;
+            }
+            int farthest = farthest(xs, ys, from, to);
+            if (distance(xs, ys, from, to, farthest) > tolerance) {
+                keep[farthest] = true;
+                stack.add(from);
+                stack.add(farthest);
+                stack.add(farthest);
+                stack.add(to);
+            }
+        }
+
+        IntList result = new IntList();
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                result.add(i);
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * @return (from, to)之间离头尾连线最远的点
+     */
+    private static int farthest(double[] xs, double[] ys, int from, int to) {
+        double dx = xs[to] - xs[from];
+        double dy = ys[to] - ys[from];
+        boolean degenerate = dx == 0 && dy == 0;
+        int farthest = from + 1;
+        double max = -1;
+        for (int i = from + 1; i < to; i++) {
+            // 叉积的绝对值与垂直距离成正比，比较时不必除以模长；头尾重合时比较到头点的距离
+            double value = degenerate ? GeometryKernels.length(xs[i] - xs[from], ys[i] - ys[from]) :
+                    Math.abs(dx * (ys[i] - ys[from]) - dy * (xs[i] - xs[from]));
+            if (value > max) {
+                max = value;
+                farthest = i;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * @return 第i个点到from、to连线的垂直距离，from、to重合时为到from的距离
+     */
+    private static double distance(double[] xs, double[] ys, int from, int to, int i) {
+        double dx = xs[to] - xs[from];
+        double dy = ys[to] - ys[from];
+        double length = GeometryKernels.length(dx, dy);
+        if (length == 0) {
+            return GeometryKernels.length(xs[i] - xs[from], ys[i] - ys[from]);
+        }
+        return Math.abs(dx * (ys[i] - ys[from]) - dy * (xs[i] - xs[from])) / length;
+    }
+}
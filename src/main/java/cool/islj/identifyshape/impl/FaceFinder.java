@@ -0,0 +1,278 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 在线段组成的平面图中查找封闭区域（面）。
+ * 线段已在交点处打断，彼此只在端点相接，可以看作平面图：每条边拆成方向相反的两条半边，
+ * 每个顶点处按出射方向的角度排序，沿"到达后取反向半边顺时针方向的下一条"行走，
+ * 走出的每个环都是一个面，面在行走方向的左侧。有界面为逆时针，面积为正，外边界面积为负。
+ * 总复杂度为排序的O(E log E)
+ */
+final class FaceFinder {
+
+    /**
+     * 面积小于此值的面视为退化（例如两条重合线段围成的面）
+     */
+    private static final double MIN_AREA = 1e-12;
+
+    private final SegmentGraph graph;
+
+    private long walkedHalfEdges;
+
+    FaceFinder(SegmentGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * 一个有界面
+     *
+     * @param edges    边界上的边编号，按行走顺序，桥（面内部两侧都是此面的边）已去掉
+     * @param vertices 边界上的顶点编号，按行走顺序
+     * @param area     面积
+     * @param centroid 形心
+     */
+    record Face(int[] edges, int[] vertices, double area, Point centroid) {
+    }
+
+    /**
+     * @return 所有有界面，边集合相同的面只保留一个
+     */
+    List<Face> boundedFaces() {
+        return boundedFaces(() -> false);
+    }
+
+    /**
+     * @param stop 每走一个面之前检查，返回true时停止，只返回已找到的面
+     */
+    List<Face> boundedFaces(BooleanSupplier stop) {
+        int edgeCount = graph.edgeCount();
+        boolean[] removed = pruneDanglingEdges();
+
+        // 每个顶点的出射半边按角度排序，半边h = 2e表示边e从头到尾，h = 2e + 1表示从尾到头
+        int vertexCount = graph.vertexCount();
+        int[] outStart = new int[vertexCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            if (!removed[e]) {
+                outStart[graph.edgeBegin[e] + 1]++;
+                outStart[graph.edgeEnd[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            outStart[v + 1] += outStart[v];
+        }
+        int[] outHalfEdges = new int[outStart[vertexCount]];
+        int[] fill = new int[vertexCount];
+        double[] angles = new double[edgeCount * 2];
+        for (int e = 0; e < edgeCount; e++) {
+            if (removed[e]) {
+                continue;
+            }
+            int forward = 2 * e, backward = 2 * e + 1;
+            angles[forward] = departureAngle(forward);
+            angles[backward] = departureAngle(backward);
+            outHalfEdges[outStart[graph.edgeBegin[e]] + fill[graph.edgeBegin[e]]++] = forward;
+            outHalfEdges[outStart[graph.edgeEnd[e]] + fill[graph.edgeEnd[e]]++] = backward;
+        }
+        // positionOf[h]为半边h在其起点出射列表中的位置
+        int[] positionOf = new int[edgeCount * 2];
+        for (int v = 0; v < vertexCount; v++) {
+            sortByAngle(outHalfEdges, outStart[v], outStart[v + 1], angles);
+            for (int k = outStart[v]; k < outStart[v + 1]; k++) {
+                positionOf[outHalfEdges[k]] = k;
+            }
+        }
+
+        List<Face> faces = new ArrayList<>();
+        Set<EdgeSetKey> signatures = new HashSet<>();
+        boolean[] walked = new boolean[edgeCount * 2];
+        IntList faceHalfEdges = new IntList();
+        for (int e = 0; e < edgeCount; e++) {
+            for (int first = 2 * e; first <= 2 * e + 1 && !removed[e]; first++) {
+                if (walked[first]) {
+                    continue;
+                }
+                if (stop.getAsBoolean()) {
+                    return faces;
+                }
+                faceHalfEdges.clear();
+                int halfEdge = first;
+                do {
+                    walked[halfEdge] = true;
+                    walkedHalfEdges++;
+                    faceHalfEdges.add(halfEdge);
+                    // 到达终点后，取反向半边在终点处顺时针方向的下一条
+                    int twin = halfEdge ^ 1;
+                    int v = origin(twin);
+                    int position = positionOf[twin];
+                    halfEdge = outHalfEdges[position == outStart[v] ? outStart[v + 1] - 1 : position - 1];
+                } while (halfEdge != first && !walked[halfEdge]);
+
+                Face face = toFace(faceHalfEdges);
+                if (face != null && signatures.add(new EdgeSetKey(face.edges()))) {
+                    faces.add(face);
+                }
+            }
+        }
+        return faces;
+    }
+
+    /**
+     * @return boundedFaces()行走过的半边数
+     */
+    long walkedHalfEdges() {
+        return walkedHalfEdges;
+    }
+
+    /**
+     * 反复去掉度为1的顶点上的边，这些边不可能在任何封闭区域的边界上
+     *
+     * @return 每条边是否被去掉
+     */
+    private boolean[] pruneDanglingEdges() {
+        int[] degrees = new int[graph.vertexCount()];
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            degrees[graph.edgeBegin[e]]++;
+            degrees[graph.edgeEnd[e]]++;
+        }
+        boolean[] removed = new boolean[graph.edgeCount()];
+        IntList stack = new IntList();
+        for (int v = 0; v < degrees.length; v++) {
+            if (degrees[v] == 1) {
+                stack.add(v);
+            }
+        }
+        while (!stack.isEmpty()) {
+            int v = stack.removeLast();
+            for (int k = graph.adjacentStart[v]; k < graph.adjacentStart[v + 1]; k++) {
+                int e = graph.adjacentEdges[k];
+                if (removed[e]) {
+                    continue;
+                }
+                removed[e] = true;
+                degrees[v]--;
+                int other = graph.otherVertex(e, v);
+                if (--degrees[other] == 1) {
+                    stack.add(other);
+                }
+            }
+        }
+        return removed;
+    }
+
+    private int origin(int halfEdge) {
+        int e = halfEdge >> 1;
+        return (halfEdge & 1) == 0 ? graph.edgeBegin[e] : graph.edgeEnd[e];
+    }
+
+    /**
+     * 半边离开起点时的方向角：取点集中从起点出发第一个不与起点重合的点，曲线因此按切线方向排序
+     */
+    private double departureAngle(int halfEdge) {
+        List<Point> points = graph.segments.get(halfEdge >> 1).getAllPoints();
+        boolean forward = (halfEdge & 1) == 0;
+        Point start = forward ? points.getFirst() : points.getLast();
+        for (int k = 1; k < points.size(); k++) {
+            Point next = points.get(forward ? k : points.size() - 1 - k);
+            double dx = next.getX() - start.getX();
+            double dy = next.getY() - start.getY();
+            if (Math.abs(dx) >= VertexIndex.TOLERANCE || Math.abs(dy) >= VertexIndex.TOLERANCE) {
+                return Math.atan2(dy, dx);
+            }
+        }
+        return 0;
+    }
+
+    private static void sortByAngle(int[] halfEdges, int from, int to, double[] angles) {
+        // 每个顶点的度一般很小，插入排序即可
+        for (int i = from + 1; i < to; i++) {
+            int halfEdge = halfEdges[i];
+            int j = i - 1;
+            while (j >= from && Double.compare(angles[halfEdges[j]], angles[halfEdge]) > 0) {
+                halfEdges[j + 1] = halfEdges[j];
+                j--;
+            }
+            halfEdges[j + 1] = halfEdge;
+        }
+    }
+
+    /**
+     * 计算面积和形心，只保留有界面
+     */
+    private Face toFace(IntList halfEdges) {
+        int count = halfEdges.size();
+        int[] edges = new int[count];
+        int[] vertices = new int[count];
+        // 以第一个顶点为原点计算，避免大坐标相乘损失精度
+        Point originPoint = graph.vertexIndex.point(origin(halfEdges.get(0)));
+        double originX = originPoint.getX(), originY = originPoint.getY();
+        double doubleArea = 0, centroidX = 0, centroidY = 0;
+        for (int i = 0; i < count; i++) {
+            int halfEdge = halfEdges.get(i);
+            edges[i] = halfEdge >> 1;
+            vertices[i] = origin(halfEdge);
+            List<Point> points = graph.segments.get(edges[i]).getAllPoints();
+            boolean forward = (halfEdge & 1) == 0;
+            for (int k = 0; k < points.size() - 1; k++) {
+                Point p1 = points.get(forward ? k : points.size() - 1 - k);
+                Point p2 = points.get(forward ? k + 1 : points.size() - 2 - k);
+                double x1 = p1.getX() - originX, y1 = p1.getY() - originY;
+                double x2 = p2.getX() - originX, y2 = p2.getY() - originY;
+                double cross = x1 * y2 - x2 * y1;
+                doubleArea += cross;
+                centroidX += (x1 + x2) * cross;
+                centroidY += (y1 + y2) * cross;
+            }
+        }
+        if (!(doubleArea / 2 > MIN_AREA)) {
+            return null;
+        }
+
+        // 同一条边在面中出现两次说明它是面内部的桥，不属于封闭边界
+        int[] sortedEdges = edges.clone();
+        Arrays.sort(sortedEdges);
+        IntList boundaryEdges = new IntList(count);
+        for (int i = 0; i < count; i++) {
+            int index = Arrays.binarySearch(sortedEdges, edges[i]);
+            boolean twice = (index > 0 && sortedEdges[index - 1] == edges[i]) ||
+                    (index < count - 1 && sortedEdges[index + 1] == edges[i]);
+            if (!twice) {
+                boundaryEdges.add(edges[i]);
+            }
+        }
+        if (boundaryEdges.isEmpty()) {
+            return null;
+        }
+        double area = doubleArea / 2;
+        Point centroid = new Point(originX + centroidX / (6 * area), originY + centroidY / (6 * area));
+        return new Face(boundaryEdges.toArray(), vertices, area, centroid);
+    }
+
+    /**
+     * 面的规范签名：排序后的边编号，用于O(1)去重
+     */
+    private record EdgeSetKey(int[] sortedEdges) {
+
+        EdgeSetKey {
+            sortedEdges = sortedEdges.clone();
+            Arrays.sort(sortedEdges);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EdgeSetKey other && Arrays.equals(sortedEdges, other.sortedEdges);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(sortedEdges);
+        }
+    }
+}
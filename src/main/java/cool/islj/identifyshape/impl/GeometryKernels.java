@@ -0,0 +1,127 @@
+package cool.islj.identifyshape.impl;
+
+/**
+ * 批量几何计算：对坐标数组一次算出一批垂直距离和转角余弦。
+ * 运行时加载了jdk.incubator.vector模块（--add-modules jdk.incubator.vector）时使用Vector API实现，
+ * 否则使用标量实现；设置-Didentifyshape.vector=false可强制使用标量实现。
+ * 两种实现的运算顺序相同，且只用加减乘除和开方（IEEE 754精确舍入），结果逐位一致。
+ * 角度阈值通过预先算好的余弦比较，不再调用反三角函数
+ */
+public final class GeometryKernels {
+
+    /**
+     * cos(150°)
+     */
+    public static final double COS_150 = Math.cos(Math.toRadians(150));
+
+    private static final Backend BACKEND = loadBackend();
+
+    private GeometryKernels() {
+    }
+
+    /**
+     * @return 向量(dx, dy)的长度
+     */
+    public static double length(double dx, double dy) {
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * 夹角是否小于阈值，与 acos(cos) * 180 / π < 阈值 等价：cos为NaN或大于1（acos为NaN）时为false
+     *
+     * @param cos          夹角的余弦
+     * @param cosThreshold 阈值角度的余弦
+     */
+    public static boolean angleLessThan(double cos, double cosThreshold) {
+        return cos > cosThreshold && cos <= 1;
+    }
+
+    /**
+     * 计算[from, from + count)范围内各点到直线的垂直距离，直线过(originX, originY)，方向为(directionX, directionY)
+     *
+     * @param directionLength 方向向量的长度
+     * @param result          result[k]为第from + k个点的距离
+     */
+    public static void perpendicularDistances(double[] xs, double[] ys, int from, int count,
+                                              double originX, double originY,
+                                              double directionX, double directionY, double directionLength,
+                                              double[] result) {
+        BACKEND.perpendicularDistances(xs, ys, from, count, originX, originY, directionX, directionY, directionLength, result);
+    }
+
+    /**
+     * 计算各点处的转角余弦：result[i]为向量(i -> i - 1)与(i -> i + step)夹角的余弦，i取[1, size - 1 - step]，
+     * 其他位置不写入
+     */
+    public static void turnCosines(double[] xs, double[] ys, int size, int step, double[] result) {
+        BACKEND.turnCosines(xs, ys, size, step, result);
+    }
+
+    private static Backend loadBackend() {
+        if (!Boolean.parseBoolean(System.getProperty("identifyshape.vector", "true")) ||
+                ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarBackend();
+        }
+        try {
+            return (Backend) Class.forName("cool.islj.identifyshape.impl.VectorGeometryBackend")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarBackend();
+        }
+    }
+
+    interface Backend {
+
+        void perpendicularDistances(double[] xs, double[] ys, int from, int count,
+                                    double originX, double originY,
+                                    double directionX, double directionY, double directionLength,
+                                    double[] result);
+
+        void turnCosines(double[] xs, double[] ys, int size, int step, double[] result);
+    }
+
+    /**
+     * 标量实现，Vector API实现也用它处理不满一个向量的尾部
+     */
+    static class ScalarBackend implements Backend {
+
+        @Override
+        public void perpendicularDistances(double[] xs, double[] ys, int from, int count,
+                                           double originX, double originY,
+                                           double directionX, double directionY, double directionLength,
+                                           double[] result) {
+            perpendicularDistances(xs, ys, from, 0, count, originX, originY, directionX, directionY, directionLength, result);
+        }
+
+        void perpendicularDistances(double[] xs, double[] ys, int from, int begin, int count,
+                                    double originX, double originY,
+                                    double directionX, double directionY, double directionLength,
+                                    double[] result) {
+            for (int k = begin; k < count; k++) {
+                double dx = xs[from + k] - originX;
+                double dy = ys[from + k] - originY;
+                double length = Math.sqrt(dx * dx + dy * dy);
+                // 投影长度，即矢量点乘/模长
+                double projectLength = (directionX * dx + directionY * dy) / directionLength;
+                result[k] = Math.sqrt(length * length - projectLength * projectLength);
+            }
+        }
+
+        @Override
+        public void turnCosines(double[] xs, double[] ys, int size, int step, double[] result) {
+            turnCosines(xs, ys, 1, size - step, step, result);
+        }
+
+        void turnCosines(double[] xs, double[] ys, int from, int to, int step, double[] result) {
+            for (int i = from; i < to; i++) {
+                double dx1 = xs[i - 1] - xs[i];
+                double dy1 = ys[i - 1] - ys[i];
+                double dx2 = xs[i + step] - xs[i];
+                double dy2 = ys[i + step] - ys[i];
+                double length1 = Math.sqrt(dx1 * dx1 + dy1 * dy1);
+                double length2 = Math.sqrt(dx2 * dx2 + dy2 * dy2);
+                result[i] = (dx1 * dx2 + dy1 * dy2) / (length1 * length2);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+
+/**
+ * 鲁棒的几何判定。方向判定先用浮点数计算，并按误差上界（Shewchuk的orient2d）判断符号是否可信，
+ * 只有结果落在误差范围内时才用double展开式精确计算，一般情况下与直接用浮点数计算一样快。
+ * 线段是否相交只由方向判定决定，交点的坐标以线段起点为局部原点计算，
+ * 避免1e7量级的坐标相乘后相减带来的精度损失
+ */
+final class GeometryPredicates {
+
+    /**
+     * 2^-53，double相对舍入误差的上界
+     */
+    private static final double EPSILON = Math.ulp(1d) / 2;
+
+    private static final double ORIENTATION_ERROR_BOUND = (3 + 16 * EPSILON) * EPSILON;
+
+    private GeometryPredicates() {
+    }
+
+    /**
+     * @return c在有向直线a -> b的左侧为1，右侧为-1，三点共线为0；坐标不是有限值时为0
+     */
+    static int orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        double detLeft = (ax - cx) * (by - cy);
+        double detRight = (ay - cy) * (bx - cx);
+        double det = detLeft - detRight;
+        if (!Double.isFinite(det)) {
+            return 0;
+        }
+        // 两项异号或有一项为0时相减不会抵消，浮点结果的符号就是精确结果的符号（含共用端点时的0）
+        if ((detLeft > 0 && detRight <= 0) || (detLeft < 0 && detRight >= 0) || detLeft == 0) {
+            return (int) Math.signum(det);
+        }
+        double errorBound = ORIENTATION_ERROR_BOUND * (Math.abs(detLeft) + Math.abs(detRight));
+        if (det > errorBound) {
+            return 1;
+        }
+        if (-det > errorBound) {
+            return -1;
+        }
+        return exactOrientation(ax, ay, bx, by, cx, cy);
+    }
+
+    /**
+     * 求线段p1p2与p3p4的交点
+     *
+     * @return 交点；某个端点在另一条线段上时返回这个端点对象本身；不相交、平行或共线时返回null
+     */
+    static Point intersection(Point p1, Point p2, Point p3, Point p4) {
+        double x1 = p1.getX(), y1 = p1.getY();
+        double x2 = p2.getX(), y2 = p2.getY();
+        double x3 = p3.getX(), y3 = p3.getY();
+        double x4 = p4.getX(), y4 = p4.getY();
+        if (!isFinite(x1, y1) || !isFinite(x2, y2) || !isFinite(x3, y3) || !isFinite(x4, y4)) {
+            return null;
+        }
+
+        // 跨立实验：两条线段的端点都分别在另一条线段所在直线的两侧（或直线上）
+        int o1 = orientation(x3, y3, x4, y4, x1, y1);
+        int o2 = orientation(x3, y3, x4, y4, x2, y2);
+        if (o1 != 0 && o1 == o2) {
+            return null;
+        }
+        int o3 = orientation(x1, y1, x2, y2, x3, y3);
+        int o4 = orientation(x1, y1, x2, y2, x4, y4);
+        if (o3 != 0 && o3 == o4) {
+            return null;
+        }
+        if ((o1 == 0 && o2 == 0) || (o3 == 0 && o4 == 0)) {
+            // 共线或有一条退化为点，没有唯一的交点
+            return null;
+        }
+        // 交点恰好是端点
+        if (o1 == 0) {
+            return p1;
+        }
+        if (o2 == 0) {
+            return p2;
+        }
+        if (o3 == 0) {
+            return p3;
+        }
+        if (o4 == 0) {
+            return p4;
+        }
+
+        // 真相交，以p1为原点求交点在p1p2上的参数t
+        double dx = x2 - x1, dy = y2 - y1;
+        double ex = x4 - x3, ey = y4 - y3;
+        double t = ((x3 - x1) * ey - (y3 - y1) * ex) / (dx * ey - dy * ex);
+        t = Math.max(0, Math.min(1, t));
+        return new Point(x1 + t * dx, y1 + t * dy);
+    }
+
+    /**
+     * @return p到a、b所在直线的距离，以a为局部原点计算；a、b重合时为到a的距离
+     */
+    static double distanceToLine(Point p, Point a, Point b) {
+        double dx = b.getX() - a.getX(), dy = b.getY() - a.getY();
+        double px = p.getX() - a.getX(), py = p.getY() - a.getY();
+        double length = GeometryKernels.length(dx, dy);
+        if (length == 0) {
+            return GeometryKernels.length(px, py);
+        }
+        return Math.abs(dx * py - dy * px) / length;
+    }
+
+    /**
+     * @return p到线段ab的距离，以a为局部原点计算；a、b重合时为到a的距离
+     */
+    static double distanceToSegment(Point p, Point a, Point b) {
+        double dx = b.getX() - a.getX(), dy = b.getY() - a.getY();
+        double px = p.getX() - a.getX(), py = p.getY() - a.getY();
+        double t = px * dx + py * dy;
+        double lengthSquare = dx * dx + dy * dy;
+        if (t <= 0 || lengthSquare == 0) {
+            return GeometryKernels.length(px, py);
+        }
+        if (t >= lengthSquare) {
+            return GeometryKernels.length(p.getX() - b.getX(), p.getY() - b.getY());
+        }
+        return Math.abs(dx * py - dy * px) / Math.sqrt(lengthSquare);
+    }
+
+    /**
+     * 精确计算行列式的符号：坐标差按TwoDiff拆成两个double之和，乘积用fma拆成两个double之和，
+     * 所有项累加为无重叠的展开式（Shewchuk的grow-expansion），展开式中绝对值最大的一项决定符号。
+     * 全部是double运算，不创建大数对象
+     */
+    private static int exactOrientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        double acx = ax - cx, acxTail = diffTail(ax, cx, acx);
+        double bcy = by - cy, bcyTail = diffTail(by, cy, bcy);
+        double acy = ay - cy, acyTail = diffTail(ay, cy, acy);
+        double bcx = bx - cx, bcxTail = diffTail(bx, cx, bcx);
+
+        // 8个乘积，每个拆成2项，展开式最多16项
+        double[] expansion = new double[16];
+        int size = 0;
+        size = addProduct(expansion, size, acx, bcy);
+        size = addProduct(expansion, size, acx, bcyTail);
+        size = addProduct(expansion, size, acxTail, bcy);
+        size = addProduct(expansion, size, acxTail, bcyTail);
+        size = addProduct(expansion, size, -acy, bcx);
+        size = addProduct(expansion, size, -acy, bcxTail);
+        size = addProduct(expansion, size, -acyTail, bcx);
+        size = addProduct(expansion, size, -acyTail, bcxTail);
+        return (int) Math.signum(expansion[size - 1]);
+    }
+
+    private static int addProduct(double[] expansion, int size, double a, double b) {
+        double product = a * b;
+        size = grow(expansion, size, Math.fma(a, b, -product));
+        return grow(expansion, size, product);
+    }
+
+    /**
+     * 把value加入展开式，结果仍按绝对值从小到大排列且各项不重叠，去掉为0的项（展开式为0时保留一个0）
+     */
+    private static int grow(double[] expansion, int size, double value) {
+        double sum = value;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            double next = sum + expansion[i];
+            double tail = sumTail(sum, expansion[i], next);
+            sum = next;
+            if (tail != 0) {
+                expansion[count++] = tail;
+            }
+        }
+        if (sum != 0 || count == 0) {
+            expansion[count++] = sum;
+        }
+        return count;
+    }
+
+    /**
+     * @return a - b的舍入误差，即a - b = difference + 返回值
+     */
+    private static double diffTail(double a, double b, double difference) {
+        double bVirtual = a - difference;
+        double aVirtual = difference + bVirtual;
+        return (a - aVirtual) + (bVirtual - b);
+    }
+
+    /**
+     * @return a + b的舍入误差，即a + b = sum + 返回值
+     */
+    private static double sumTail(double a, double b, double sum) {
+        double bVirtual = sum - a;
+        double aVirtual = sum - bVirtual;
+        return (a - aVirtual) + (b - bVirtual);
+    }
+
+    private static boolean isFinite(double x, double y) {
+        return Double.isFinite(x) && Double.isFinite(y);
+    }
+}
@@ -0,0 +1,180 @@
+package cool.islj.identifyshape.impl;
+
+/**
+ * 外接矩形的均匀网格索引。
+ * 每个元素登记在它的外接矩形覆盖的所有格子里，查询时只比较查询矩形覆盖的格子中的元素，
+ * 重叠判断用闭区间，因此两个矩形只要有公共点（包括边界接触）就会被查到。
+ * 构建后只读，可被多个线程同时查询
+ */
+final class GridIndex {
+
+    /**
+     * 平均每个元素对应的格子数上限，防止长线段很多时格子过密
+     */
+    private static final int CELLS_PER_ITEM = 4;
+
+    private static final int MAX_CELLS_PER_AXIS = 4096;
+
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] maxX;
+    private final double[] maxY;
+
+    private final int itemCount;
+
+    private final double originX;
+    private final double originY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+
+    /**
+     * CSR格式：cellItems[cellStart[c], cellStart[c + 1])为格子c中的元素
+     */
+    private final int[] cellStart;
+    private final int[] cellItems;
+
+    /**
+     * 坐标中含NaN或无穷的元素，无法放进网格，每次查询都返回
+     */
+    private final int[] unboundedItems;
+
+    /**
+     * @param minX      各元素外接矩形的最小x，下标即元素编号
+     * @param minY      各元素外接矩形的最小y
+     * @param maxX      各元素外接矩形的最大x
+     * @param maxY      各元素外接矩形的最大y
+     * @param itemCount 元素个数
+     */
+    GridIndex(double[] minX, double[] minY, double[] maxX, double[] maxY, int itemCount) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.itemCount = itemCount;
+
+        // 网格范围和格子大小：格子边长取元素外接矩形长边的平均值
+        double xMin = Double.MAX_VALUE, yMin = Double.MAX_VALUE;
+        double xMax = -Double.MAX_VALUE, yMax = -Double.MAX_VALUE;
+        double extentSum = 0;
+        int boundedCount = 0;
+        IntList unbounded = new IntList();
+        for (int i = 0; i < itemCount; i++) {
+            if (!isBounded(minX[i], minY[i], maxX[i], maxY[i])) {
+                unbounded.add(i);
+                continue;
+            }
+            xMin = Math.min(xMin, minX[i]);
+            yMin = Math.min(yMin, minY[i]);
+            xMax = Math.max(xMax, maxX[i]);
+            yMax = Math.max(yMax, maxY[i]);
+            extentSum += Math.max(maxX[i] - minX[i], maxY[i] - minY[i]);
+            boundedCount++;
+        }
+        unboundedItems = unbounded.toArray();
+
+        if (boundedCount == 0) {
+            originX = originY = 0;
+            cellSize = 1;
+            columns = rows = 1;
+        } else {
+            double width = xMax - xMin;
+            double height = yMax - yMin;
+            double size = extentSum / boundedCount;
+            // 格子数量不超过元素数的常数倍
+            double minSize = Math.sqrt(width * height / ((double) boundedCount * CELLS_PER_ITEM));
+            size = Math.max(size, minSize);
+            size = Math.max(size, Math.max(width, height) / MAX_CELLS_PER_AXIS);
+            if (!(size > 0)) {
+                size = 1;
+            }
+            originX = xMin;
+            originY = yMin;
+            cellSize = size;
+            columns = Math.min(MAX_CELLS_PER_AXIS, (int) (width / size) + 1);
+            rows = Math.min(MAX_CELLS_PER_AXIS, (int) (height / size) + 1);
+        }
+
+        // 第一遍统计每个格子的元素数，第二遍填充
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < itemCount; i++) {
+            if (!isBounded(minX[i], minY[i], maxX[i], maxY[i])) {
+                continue;
+            }
+            int c0 = column(minX[i]), c1 = column(maxX[i]);
+            int r0 = row(minY[i]), r1 = row(maxY[i]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    cellStart[r * columns + c + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellItems = new int[cellStart[columns * rows]];
+        int[] fill = new int[columns * rows];
+        for (int i = 0; i < itemCount; i++) {
+            if (!isBounded(minX[i], minY[i], maxX[i], maxY[i])) {
+                continue;
+            }
+            int c0 = column(minX[i]), c1 = column(maxX[i]);
+            int r0 = row(minY[i]), r1 = row(maxY[i]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    int cell = r * columns + c;
+                    cellItems[cellStart[cell] + fill[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * 查询外接矩形与给定矩形相交（闭区间）的元素
+     *
+     * @param result 先清空，再按元素编号升序、不重复地填入结果
+     */
+    void query(double qMinX, double qMinY, double qMaxX, double qMaxY, IntList result) {
+        result.clear();
+        if (!isBounded(qMinX, qMinY, qMaxX, qMaxY)) {
+            // 查询范围无法确定，保守地返回全部元素
+            for (int i = 0; i < itemCount; i++) {
+                result.add(i);
+            }
+            return;
+        }
+        int c0 = column(qMinX), c1 = column(qMaxX);
+        int r0 = row(qMinY), r1 = row(qMaxY);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int item = cellItems[k];
+                    if (minX[item] <= qMaxX && maxX[item] >= qMinX && minY[item] <= qMaxY && maxY[item] >= qMinY) {
+                        result.add(item);
+                    }
+                }
+            }
+        }
+        for (int item : unboundedItems) {
+            result.add(item);
+        }
+        result.sortDistinct();
+    }
+
+    private int column(double x) {
+        return clamp((int) Math.floor((x - originX) / cellSize), columns);
+    }
+
+    private int row(double y) {
+        return clamp((int) Math.floor((y - originY) / cellSize), rows);
+    }
+
+    private static int clamp(int value, int count) {
+        return Math.max(0, Math.min(count - 1, value));
+    }
+
+    private static boolean isBounded(double xMin, double yMin, double xMax, double yMax) {
+        return Double.isFinite(xMin) && Double.isFinite(yMin) && Double.isFinite(xMax) && Double.isFinite(yMax);
+    }
+}
@@ -2,25 +2,352 @@ package cool.islj.identifyshape.impl;
 
 import com.google.common.collect.Lists;
 import cool.islj.identifyshape.Config;
+import cool.islj.identifyshape.entry.CompactSketch;
 import cool.islj.identifyshape.entry.Envelope;
 import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.PointView;
+import cool.islj.identifyshape.entry.RecognitionResult;
 import cool.islj.identifyshape.entry.Segment;
 import cool.islj.identifyshape.entry.Shape;
+import cool.islj.identifyshape.entry.Sketch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.function.Supplier;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
+/**
+ * 图形识别。
+ * 此类除了构造时传入的回调和策略没有任何字段，是无状态的，同一个实例可以被多个线程同时使用；
+ * 带跟踪记录的实例（withTrace）对应一次请求，只用于那一次识别。
+ * 注意方法会修改传入的线段（例如extendSegment），同一组线段不能同时交给多个线程
+ */
 public class IdentifyImpl {
 
+    /**
+     * 打断时的吸附距离，与判断退化线段的容差相同
+     */
+    private static final double SNAP_DISTANCE = 0.0001;
+
+    private final RecognitionListener listener;
+
+    private final Simplifier simplifier;
+
+    private final CurveFitter curveFitter;
+
+    private final RecognitionTrace trace;
+
+    public IdentifyImpl() {
+        this(RecognitionListener.NONE);
+    }
+
+    /**
+     * @param listener 各阶段完成时的回调，用于统计耗时和数据量
+     */
+    public IdentifyImpl(RecognitionListener listener) {
+        this(listener, Simplifier.WINDOW);
+    }
+
+    /**
+     * @param listener   各阶段完成时的回调，用于统计耗时和数据量
+     * @param simplifier 平滑时使用的点集简化策略
+     */
+    public IdentifyImpl(RecognitionListener listener, Simplifier simplifier) {
+        this(listener, simplifier, CurveFitter.NONE);
+    }
+
+    /**
+     * @param listener    各阶段完成时的回调，用于统计耗时和数据量
+     * @param simplifier  平滑时使用的点集简化策略
+     * @param curveFitter 曲线线段的点集压缩策略
+     */
+    public IdentifyImpl(RecognitionListener listener, Simplifier simplifier, CurveFitter curveFitter) {
+        this(listener, simplifier, curveFitter, RecognitionTrace.NONE);
+    }
+
+    /**
+     * @param listener    各阶段完成时的回调，用于统计耗时和数据量
+     * @param simplifier  平滑时使用的点集简化策略
+     * @param curveFitter 曲线线段的点集压缩策略
+     * @param trace       各阶段输出的跟踪记录
+     */
+    public IdentifyImpl(RecognitionListener listener, Simplifier simplifier, CurveFitter curveFitter, RecognitionTrace trace) {
+        this.listener = listener;
+        this.simplifier = simplifier;
+        this.curveFitter = curveFitter;
+        this.trace = trace;
+    }
+
+    /**
+     * @return 回调相同、使用另一种简化策略的实例，可以按请求选择策略
+     */
+    public IdentifyImpl withSimplifier(Simplifier simplifier) {
+        return simplifier == this.simplifier ? this : new IdentifyImpl(listener, simplifier, curveFitter, trace);
+    }
+
+    /**
+     * @return 回调相同、使用另一种曲线压缩策略的实例
+     */
+    public IdentifyImpl withCurveFitter(CurveFitter curveFitter) {
+        return curveFitter == this.curveFitter ? this : new IdentifyImpl(listener, simplifier, curveFitter, trace);
+    }
+
+    /**
+     * @return 把各阶段输出记录到trace的实例，可以只对需要排查的请求启用
+     */
+    public IdentifyImpl withTrace(RecognitionTrace trace) {
+        return trace == this.trace ? this : new IdentifyImpl(listener, simplifier, curveFitter, trace);
+    }
+
+    /**
+     * 识别一幅草图
+     *
+     * @see #recognize(List, double)
+     */
+    public RecognitionResult recognize(Sketch sketch) {
+        return recognize(sketch, RecognitionBudget.UNLIMITED);
+    }
+
+    /**
+     * 在时间预算内识别一幅草图。预算用完或线程被中断时提前返回已有的结果，并标记为不完整：
+     * 预处理未完成时为已延长的线段，求交未完成时未处理的线段不打断，组合封闭图形未完成时只有部分封闭图形且没有箭头，
+     * 查找箭头未完成时只有部分箭头。某个阶段只超出自己的上限时，后面的阶段仍以它的部分输出继续
+     *
+     * @see RecognitionResult#isComplete()
+     */
+    public RecognitionResult recognize(Sketch sketch, RecognitionBudget budget) {
+        return recognize(sketch, stroke -> prepareStroke(stroke, sketch.getPixelDistance()), budget);
+    }
+
+    /**
+     * 识别紧凑存储的草图
+     *
+     * @see #recognize(CompactSketch, RecognitionBudget)
+     */
+    public RecognitionResult recognize(CompactSketch sketch) {
+        return recognize(sketch, RecognitionBudget.UNLIMITED);
+    }
+
+    /**
+     * 识别紧凑存储的草图：平滑、切割、求交等都以草图的原点为局部原点计算，坐标只有几千的量级，
+     * 结果中的点最后统一平移回绝对坐标
+     *
+     * @see #recognize(Sketch, RecognitionBudget)
+     */
+    public RecognitionResult recognize(CompactSketch sketch, RecognitionBudget budget) {
+        RecognitionResult result = recognize(sketch.toLocalSketch(), budget);
+        return translate(result, sketch.getOriginX(), sketch.getOriginY());
+    }
+
+    /**
+     * 把结果中的所有点平移(dx, dy)。点对象在线段之间共用，按对象去重后每个只平移一次；
+     * 点和线段的哈希值随坐标改变，两个Map重新构建
+     */
+    static RecognitionResult translate(RecognitionResult result, double dx, double dy) {
+        Set<Point> points = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Segment> segments = new ArrayList<>(result.getSegments());
+        result.getShapes().forEach((key, shapeSegments) -> {
+            points.add(key);
+            segments.addAll(shapeSegments);
+        });
+        result.getArrows().forEach((shaft, arrowSegments) -> {
+            segments.add(shaft);
+            segments.addAll(arrowSegments);
+        });
+        for (Segment segment : segments) {
+            points.add(segment.getBeginPoint());
+            points.add(segment.getEndPoint());
+            points.add(segment.getOldBeginPoint());
+            points.add(segment.getOldEndPoint());
+            points.addAll(segment.getAllPoints());
+        }
+        points.remove(null);
+        for (Point point : points) {
+            point.setX(point.getX() + dx);
+            point.setY(point.getY() + dy);
+        }
+        return new RecognitionResult(result.getSegments(), new HashMap<>(result.getShapes()),
+                new HashMap<>(result.getArrows()), result.isComplete());
+    }
+
+    /**
+     * 深复制识别结果：点和线段都是新对象，坐标不变；对象之间的共用关系保持不变，
+     * 例如同一个点出现在多条线段中、封闭图形和箭头引用segments中的线段
+     */
+    static RecognitionResult copyOf(RecognitionResult result) {
+        Map<Point, Point> points = new IdentityHashMap<>();
+        Map<Segment, Segment> segments = new IdentityHashMap<>();
+        UnaryOperator<Point> copyPoint = point -> point == null ? null :
+                points.computeIfAbsent(point, p -> new Point(p.getX(), p.getY()));
+        UnaryOperator<Segment> copySegment = segment -> segments.computeIfAbsent(segment, s -> {
+            List<Point> allPoints = new ArrayList<>(s.getAllPoints().size());
+            s.getAllPoints().forEach(point -> allPoints.add(copyPoint.apply(point)));
+            return new Segment(copyPoint.apply(s.getBeginPoint()), copyPoint.apply(s.getEndPoint()),
+                    copyPoint.apply(s.getOldBeginPoint()), copyPoint.apply(s.getOldEndPoint()),
+                    s.getAllPoints() instanceof PointView ? PointView.view(allPoints, 0, allPoints.size()) : allPoints, s.getShape());
+        });
+
+        List<Segment> resultSegments = new ArrayList<>(result.getSegments().size());
+        result.getSegments().forEach(segment -> resultSegments.add(copySegment.apply(segment)));
+        Map<Point, List<Segment>> shapes = new HashMap<>();
+        result.getShapes().forEach((key, shapeSegments) ->
+                shapes.put(copyPoint.apply(key), new ArrayList<>(shapeSegments.stream().map(copySegment).toList())));
+        Map<Segment, List<Segment>> arrows = new HashMap<>();
+        result.getArrows().forEach((shaft, arrowSegments) ->
+                arrows.put(copySegment.apply(shaft), new ArrayList<>(arrowSegments.stream().map(copySegment).toList())));
+        return new RecognitionResult(resultSegments, shapes, arrows, result.isComplete());
+    }
+
+    /**
+     * 识别一幅草图，单笔的预处理由调用方提供（例如从缓存中取）
+     *
+     * @param prepare 返回单笔切割并判断后、尚未延长的线段，这些线段随后会被延长（修改），不能与其他调用共用
+     */
+    RecognitionResult recognize(Sketch sketch, Function<PointBuffer, List<Segment>> prepare, RecognitionBudget budget) {
+        RecognitionBudget.Deadline deadline = budget.start();
+        deadline.enter(RecognitionListener.Stage.SMOOTH);
+        // 外接矩形由各笔的外接矩形合并得到
+        Envelope envelope = null;
+        for (PointBuffer stroke : sketch.getStrokes()) {
+            if (!stroke.isEmpty()) {
+                envelope = union(envelope, getEnvelope(stroke));
+            }
+        }
+        double extensionLength = extensionLength(envelope == null ? new Envelope() : envelope);
+
+        List<Segment> allSegments = new ArrayList<>();
+        List<PointBuffer> strokes = sketch.getStrokes();
+        int[] strokeStart = new int[strokes.size() + 1];
+        int prepared = 0;
+        for (int n = 0; n < strokes.size() && !deadline.expired(); n++) {
+            trace.stroke(n, strokes.get(n));
+            List<Segment> segments = prepare.apply(strokes.get(n));
+            trace.segments(RecognitionTrace.Stage.SPLIT, n, segments);
+            segments.forEach(segment -> extendSegment(segment, extensionLength));
+            trace.segments(RecognitionTrace.Stage.EXTEND, n, segments);
+            allSegments.addAll(segments);
+            strokeStart[n + 1] = allSegments.size();
+            prepared = n + 1;
+        }
+        if (deadline.isExpired()) {
+            return new RecognitionResult(allSegments, new HashMap<>(), new HashMap<>(), false);
+        }
+
+        deadline.enter(RecognitionListener.Stage.PRUNE);
+        // 平滑阶段超出上限时只有前prepared笔
+        boolean[] bypass = prune(allSegments, prepared == strokes.size() ? strokeStart : Arrays.copyOf(strokeStart, prepared + 1));
+
+        deadline.enter(RecognitionListener.Stage.CURVE_INTERSECTION);
+        List<Segment> segments = curveIntersection(allSegments, bypass, deadline);
+        trace.segments(RecognitionTrace.Stage.CURVE_INTERSECTION, 0, segments);
+        if (deadline.isExpired()) {
+            return new RecognitionResult(segments, new HashMap<>(), new HashMap<>(), false);
+        }
+        deadline.enter(RecognitionListener.Stage.CONSTRUCT_SHAPE);
+        // 剔除的线段原样留在segments中，查找箭头时合并线段与顺序有关，所以只在组合封闭图形时去掉
+        Set<Segment> bypassed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int k = 0; k < bypass.length; k++) {
+            if (bypass[k]) {
+                bypassed.add(allSegments.get(k));
+            }
+        }
+        List<Segment> shapeSegments = bypassed.isEmpty() ? segments :
+                segments.stream().filter(segment -> !bypassed.contains(segment)).toList();
+        Map<Point, List<Segment>> shapes = constructShape(shapeSegments, deadline);
+        trace.shapes(shapes);
+        if (deadline.isExpired()) {
+            return new RecognitionResult(segments, shapes, new HashMap<>(), false);
+        }
+        deadline.enter(RecognitionListener.Stage.FIND_ARROWS);
+        Map<Segment, List<Segment>> arrows = findArrows(segments, shapes, deadline);
+        trace.arrows(arrows);
+        return new RecognitionResult(segments, shapes, arrows, !deadline.isTruncated());
+    }
+
+    /**
+     * 预筛选，见{@link StrokePruner}
+     *
+     * @param strokeStart 第n笔延长后的线段为allSegments[strokeStart[n], strokeStart[n + 1])
+     * @return allSegments中每条线段是否跳过求交和组合封闭图形
+     */
+    private boolean[] prune(List<Segment> allSegments, int[] strokeStart) {
+        long start = System.nanoTime();
+        boolean[] prunedStrokes = StrokePruner.prune(allSegments, strokeStart);
+        boolean[] bypass = new boolean[allSegments.size()];
+        int prunedCount = 0;
+        for (int n = 0; n < prunedStrokes.length; n++) {
+            if (prunedStrokes[n]) {
+                Arrays.fill(bypass, strokeStart[n], strokeStart[n + 1], true);
+                prunedCount++;
+            }
+        }
+        listener.stageCompleted(RecognitionListener.Stage.PRUNE, System.nanoTime() - start, prunedStrokes.length, prunedCount, 0);
+        return bypass;
+    }
+
+    /**
+     * 完整的识别流程：逐笔平滑、切割、判断直线曲线并延长，再求交打断、组合封闭图形、查找箭头
+     *
+     * @param strokes       每一笔的原始点集
+     * @param pixelDistance 每个像素代表的距离
+     * @return 识别结果
+     */
+    public RecognitionResult recognize(List<List<Point>> strokes, double pixelDistance) {
+        return recognize(new Sketch(strokes.stream().map(PointBuffer::of).toList(), pixelDistance));
+    }
+
+    /**
+     * 单笔的预处理：平滑、切割，并判断每段是直线还是曲线，曲线的点集按curveFitter压缩
+     *
+     * @return 切割后的线段，尚未延长
+     */
+    List<Segment> prepareStroke(PointBuffer points, double pixelDistance) {
+        PointBuffer smoothed = smooth(points, pixelDistance, new PointBuffer(points.size()));
+        int[] ranges = split(smoothed);
+        List<Segment> segments = new ArrayList<>(ranges.length / 2);
+        for (int n = 0; n < ranges.length; n += 2) {
+            Shape shape = judgeStraightOrCurve(smoothed, ranges[n], ranges[n + 1]);
+            List<Point> fitted = Shape.CURVE.equals(shape) ?
+                    curveFitter.fit(smoothed, ranges[n], ranges[n + 1], Config.DEVIATION_PIXEL * pixelDistance) :
+                    smoothed.toPoints(ranges[n], ranges[n + 1] + 1);
+            PointView segmentPoints = PointView.view(fitted, 0, fitted.size());
+            Segment segment = new Segment();
+            segment.setBeginPoint(segmentPoints.getFirst());
+            segment.setEndPoint(segmentPoints.getLast());
+            segment.setAllPoints(segmentPoints);
+            segment.setShape(shape);
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    /**
+     * 复制线段，点集为新的视图，点对象共用
+     */
+    static Segment copyOf(Segment segment) {
+        return new Segment(segment.getBeginPoint(), segment.getEndPoint(), segment.getOldBeginPoint(),
+                segment.getOldEndPoint(), PointView.of(segment.getAllPoints()).copy(), segment.getShape());
+    }
+
+    /**
+     * 合并两个外接矩形，a为null时返回b
+     */
+    static Envelope union(Envelope a, Envelope b) {
+        if (a == null) {
+            return b;
+        }
+        return new Envelope(Math.min(a.getXMin(), b.getXMin()), Math.min(a.getYMin(), b.getYMin()),
+                Math.max(a.getXMax(), b.getXMax()), Math.max(a.getYMax(), b.getYMax()));
+    }
+
     /**
      * 平滑坐标点
      *
@@ -29,120 +356,133 @@ public class IdentifyImpl {
      * @return 平滑后的点集
      */
     public List<Point> smooth(List<Point> originPoints, double pixelDistance) {
-        double threshold = Config.DEVIATION_PIXEL * pixelDistance;
-        List<Point> result = new ArrayList<>();
-
-        // 分组，每组进行平滑处理
-        int begin = 0, end;
-        while ((end = begin + Config.SMOOTH_INTERVAL_COUNT) < originPoints.size()) {
-            // 将每组第一个点加入结果中
-            Point beginPoint = originPoints.get(begin);
-            result.add(beginPoint);
-
-            // 计算每组头尾矢量的模长
-            Point endPoint = originPoints.get(end);
-            double dxSum = endPoint.getX() - beginPoint.getX();
-            double dySum = endPoint.getY() - beginPoint.getY();
-            double totalLength = Math.sqrt(Math.pow(dxSum, 2) + Math.pow(dySum, 2));
-
-            // 判断起点到组内各点在头尾矢量方向上的垂直距离是否小于阈值
-            // 如果出现垂直距离大于阈值的点，将此点加入结果集，舍弃其他点，并将此点作为下一分组的起点，重新分组
-            boolean flag = false;
-            for (int i = begin; i < end - 1; i++) {
-                Point currentPoint = originPoints.get(i + 1);
-                double dx = currentPoint.getX() - beginPoint.getX();
-                double dy = currentPoint.getY() - beginPoint.getY();
-                double length = Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
-                // 计算此向量在头尾向量上的投影长度，即矢量点乘/模长
-                double projectLength = (dxSum * dx + dySum * dy) / totalLength;
-                // 计算currentPoint到头尾向量上垂直距离
-                double distance = Math.sqrt(Math.pow(length, 2) - Math.pow(projectLength, 2));
-                if (distance > threshold) {
-                    begin = i + 1;
-                    flag = true;
-                    break;
-                }
-            }
-            if (flag) {
-                continue;
-            }
-            begin = end - 1;
+        int[] keepIndexes = smooth(PointBuffer.of(originPoints), pixelDistance);
+        List<Point> result = new ArrayList<>(keepIndexes.length);
+        for (int index : keepIndexes) {
+            result.add(originPoints.get(index));
         }
-        // 如果最后不满一组，直接把最后一个点加入其中
-        if (begin < originPoints.size()) {
-            result.add(originPoints.getLast());
+        return result;
+    }
+
+    /**
+     * 平滑坐标点，结果写入result，不为每个点创建对象
+     *
+     * @param originPoints  初始点集
+     * @param pixelDistance 每个像素代表的距离
+     * @param result        平滑后的点集，原有内容会被清空
+     * @return result
+     */
+    public PointBuffer smooth(PointBuffer originPoints, double pixelDistance, PointBuffer result) {
+        int[] keepIndexes = smooth(originPoints, pixelDistance);
+        result.clear();
+        for (int index : keepIndexes) {
+            result.add(originPoints, index);
+        }
+        return result;
+    }
+
+    /**
+     * 统计简化策略的效果，用于比较不同策略对后续阶段输入规模的影响。直接调用简化策略，不产生SMOOTH阶段的事件
+     *
+     * @return 平滑后去掉的点占原始点数的比例，没有点时为0
+     */
+    public double pointReduction(Sketch sketch) {
+        long originCount = 0, keptCount = 0;
+        for (PointBuffer stroke : sketch.getStrokes()) {
+            originCount += stroke.size();
+            keptCount += simplifier.simplify(stroke, Config.DEVIATION_PIXEL * sketch.getPixelDistance()).length;
         }
-        return new ArrayList<>(result);
+        return originCount == 0 ? 0 : 1 - (double) keptCount / originCount;
+    }
+
+    /**
+     * @return 平滑后保留的点在原点集中的下标
+     */
+    private int[] smooth(PointBuffer originPoints, double pixelDistance) {
+        long start = System.nanoTime();
+        int[] result = simplifier.simplify(originPoints, Config.DEVIATION_PIXEL * pixelDistance);
+        listener.stageCompleted(RecognitionListener.Stage.SMOOTH, System.nanoTime() - start, originPoints.size(), result.length, 0);
+        return result;
     }
 
     /**
      * 在转折点处切割点集
      *
      * @param originPoints 初始点集
-     * @return 切割后的线段点集，只包含直线和曲线
+     * @return 切割后的线段点集，只包含直线和曲线，点集是originPoints（复制一次后）的视图
      */
     public List<Segment> split(List<Point> originPoints) {
-        List<Segment> result = new ArrayList<>();
+        int[] ranges = split(PointBuffer.of(originPoints));
+        PointView points = PointView.of(originPoints);
+        List<Segment> result = new ArrayList<>(ranges.length / 2);
+        for (int n = 0; n < ranges.length; n += 2) {
+            Segment newSegment = new Segment();
+            newSegment.setBeginPoint(originPoints.get(ranges[n]));
+            newSegment.setEndPoint(originPoints.get(ranges[n + 1]));
+            newSegment.setAllPoints(points.subView(ranges[n], ranges[n + 1] + 1));
+            result.add(newSegment);
+        }
+        return result;
+    }
+
+    /**
+     * 在转折点处切割点集，只计算切割位置，不复制点
+     *
+     * @param originPoints 初始点集
+     * @return 每条线段的头尾点下标（含），依次为begin0, end0, begin1, end1...，相邻线段共用转折点
+     */
+    public int[] split(PointBuffer originPoints) {
+        long start = System.nanoTime();
+        IntList result = new IntList();
+        int size = originPoints.size();
         int begin = 0;
 
         // 计算每三个点之间的夹角，夹角小于150°认为是出现了转折，打断
-        for (int i = 1; i < originPoints.size() - 1; i++) {
-            Point beforePoint = originPoints.get(i - 1);
-            Point currentPoint = originPoints.get(i);
-            Point nextPoint = originPoints.get(i + 1);
-
-            double angle = calcAngle(beforePoint, currentPoint, nextPoint);
-
-            if (Math.abs(angle) < 150 || (i < originPoints.size() - 2 &&
-                    Math.abs(calcAngle(beforePoint, currentPoint, originPoints.get(i + 2))) < 150)) {
+        // 先批量算出每个点处的转角余弦，与cos(150°)比较
+        double[] cosines = new double[Math.max(size, 1)];
+        double[] nextCosines = new double[Math.max(size, 1)];
+        GeometryKernels.turnCosines(originPoints.xs(), originPoints.ys(), size, 1, cosines);
+        GeometryKernels.turnCosines(originPoints.xs(), originPoints.ys(), size, 2, nextCosines);
+        for (int i = 1; i < size - 1; i++) {
+            if (GeometryKernels.angleLessThan(cosines[i], GeometryKernels.COS_150) || (i < size - 2 &&
+                    GeometryKernels.angleLessThan(nextCosines[i], GeometryKernels.COS_150))) {
                 if (i + 1 - begin > 4) {
                     // 角度小于120°认为此处存在转折，打断
                     // 这里考虑到折角点在平滑时被误删了，取下一个点再做一次判断
-                    Segment newSegment = new Segment();
-                    newSegment.setBeginPoint(originPoints.get(begin));
-                    newSegment.setEndPoint(currentPoint);
-                    newSegment.setAllPoints(originPoints.subList(begin, i + 1));
+                    result.add(begin);
+                    result.add(i);
                     begin = i;
-                    result.add(newSegment);
                 }
             }
         }
 
-        if (begin < originPoints.size()) {
-            Segment newSegment = new Segment();
-            newSegment.setBeginPoint(originPoints.get(begin));
-            newSegment.setEndPoint(originPoints.getLast());
-            newSegment.setAllPoints(new ArrayList<>(originPoints.subList(begin, originPoints.size())));
-            result.add(newSegment);
+        if (begin < size) {
+            result.add(begin);
+            result.add(size - 1);
         }
 
         // 这里预处理下直线最后误画的勾脚，判断逻辑是：
         // 线足够长，且头尾存在线段的点数小于5，就认为是勾脚，删除
-        if (result.size() > 1 && originPoints.size() > 15 &&
-                result.stream().anyMatch(segment -> segment.getAllPoints().size() > 10)) {
-            if (result.getFirst().getAllPoints().size() <= 4) {
-                result.removeFirst();
+        int[] ranges = result.toArray();
+        int segmentCount = ranges.length / 2;
+        if (segmentCount > 1 && size > 15) {
+            boolean hasLongSegment = false;
+            for (int n = 0; n < ranges.length; n += 2) {
+                hasLongSegment |= ranges[n + 1] - ranges[n] + 1 > 10;
             }
-            if (result.getLast().getAllPoints().size() <= 4) {
-                result.removeLast();
+            if (hasLongSegment) {
+                int from = 0, to = ranges.length;
+                if (ranges[1] - ranges[0] + 1 <= 4) {
+                    from = 2;
+                }
+                if (ranges[to - 1] - ranges[to - 2] + 1 <= 4) {
+                    to -= 2;
+                }
+                ranges = Arrays.copyOfRange(ranges, from, Math.max(from, to));
             }
         }
-        return result;
-    }
-
-    private double calcAngle(Point beforePoint, Point currentPoint, Point nextPoint) {
-        double dx1 = beforePoint.getX() - currentPoint.getX();
-        double dy1 = beforePoint.getY() - currentPoint.getY();
-
-        double dx2 = nextPoint.getX() - currentPoint.getX();
-        double dy2 = nextPoint.getY() - currentPoint.getY();
-
-        double length1 = Math.sqrt(Math.pow(dx1, 2) + Math.pow(dy1, 2));
-        double length2 = Math.sqrt(Math.pow(dx2, 2) + Math.pow(dy2, 2));
-
-        // 根据向量叉积/(向量模长1*向量模长2)得到cos值,进而求出弧度，再转为角度
-        double cosValue = (dx1 * dx2 + dy1 * dy2) / (length1 * length2);
-        return Math.acos(cosValue) * 180 / Math.PI;
+        listener.stageCompleted(RecognitionListener.Stage.SPLIT, System.nanoTime() - start, size, ranges.length / 2, 0);
+        return ranges;
     }
 
     private double calcAngle(Segment segment1, Segment segment2) {
@@ -168,32 +508,67 @@ public class IdentifyImpl {
      * @param segment 线段，判断结果填在此对象的shape属性上
      */
     public void judgeStraightOrCurve(Segment segment) {
-        // 在该线段上平均取4-5个点，计算每两个点的斜率，如果斜率相差不大，则认为是直线，否则曲线
-        // 这里考虑之前平滑时有可能把转折点去了，所以不计算头尾点，避免误差过大
-        double minSlope = Double.MAX_VALUE;
-        double maxSlope = 0;
         List<Point> allPoints = segment.getAllPoints();
-        int totalCount = allPoints.size();
-        int interval = (totalCount - 2) / 4;
+        int[] selectIndexes = selectJudgePoints(0, allPoints.size());
+        double[] xs = new double[selectIndexes.length];
+        double[] ys = new double[selectIndexes.length];
+        for (int i = 0; i < selectIndexes.length; i++) {
+            Point point = allPoints.get(selectIndexes[i]);
+            xs[i] = point.getX();
+            ys[i] = point.getY();
+        }
+        segment.setShape(judgeStraightOrCurve(xs, ys));
+    }
+
+    /**
+     * 判断点集中[begin, end]范围内的线段是直线还是曲线
+     *
+     * @param points 点集
+     * @param begin  线段头点下标
+     * @param end    线段尾点下标（含）
+     * @return 直线或曲线
+     */
+    public Shape judgeStraightOrCurve(PointBuffer points, int begin, int end) {
+        int[] selectIndexes = selectJudgePoints(begin, end - begin + 1);
+        double[] xs = new double[selectIndexes.length];
+        double[] ys = new double[selectIndexes.length];
+        for (int i = 0; i < selectIndexes.length; i++) {
+            xs[i] = points.x(selectIndexes[i]);
+            ys[i] = points.y(selectIndexes[i]);
+        }
+        return judgeStraightOrCurve(xs, ys);
+    }
 
-        List<Point> selectPoints = new ArrayList<>();
+    /**
+     * 在该线段上平均取4-5个点
+     * 这里考虑之前平滑时有可能把转折点去了，所以不计算头尾点，避免误差过大
+     */
+    private int[] selectJudgePoints(int offset, int totalCount) {
+        int interval = (totalCount - 2) / 4;
+        int[] selectIndexes = new int[5];
         for (int i = 0; i < 5; i++) {
             int index = 1 + i * interval;
-            selectPoints.add(allPoints.get(Math.min(index, totalCount - 2)));
+            selectIndexes[i] = offset + Math.min(index, totalCount - 2);
         }
-        for (int i = 0; i < selectPoints.size() - 1; i++) {
-            Point beginPoint = selectPoints.get(i);
-            Point endPoint = selectPoints.get(i + 1);
-            double slope = beginPoint.getX() - endPoint.getX() == 0 ? Double.MAX_VALUE :
-                    (beginPoint.getY() - endPoint.getY()) / (beginPoint.getX() - endPoint.getX());
+        return selectIndexes;
+    }
+
+    /**
+     * 计算每两个选取点的斜率，如果斜率相差不大，则认为是直线，否则曲线
+     */
+    private Shape judgeStraightOrCurve(double[] xs, double[] ys) {
+        double minSlope = Double.MAX_VALUE;
+        double maxSlope = 0;
+        for (int i = 0; i < xs.length - 1; i++) {
+            double slope = xs[i] - xs[i + 1] == 0 ? Double.MAX_VALUE :
+                    (ys[i] - ys[i + 1]) / (xs[i] - xs[i + 1]);
             minSlope = Math.min(minSlope, Math.abs(slope));
             maxSlope = Math.max(maxSlope, Math.abs(slope));
         }
         if (maxSlope - minSlope < 1 || 1 / minSlope - 1 / maxSlope < 1) {
-            segment.setShape(Shape.STRAIGHT);
-        } else {
-            segment.setShape(Shape.CURVE);
+            return Shape.STRAIGHT;
         }
+        return Shape.CURVE;
     }
 
     /**
@@ -206,29 +581,66 @@ public class IdentifyImpl {
         // 获取图形的外接矩形
         Envelope envelope = getEnvelope(originPoints);
 
-        // 获取延长线的长度
-        double maxLength = Math.max((envelope.getXMax() - envelope.getXMin()), (envelope.getYMax() - envelope.getYMin()));
-        double extensionLength = maxLength / 10;
-
         // 线段延长
-        extendSegment(segment, extensionLength);
+        extendSegment(segment, extensionLength(envelope));
     }
 
-    private Envelope getEnvelope(List<Point> originPoints) {
-        Supplier<Stream<Point>> pointStream = originPoints::stream;
-        Optional<Point> xMinPoint = pointStream.get().min(Comparator.comparing(Point::getX));
-        Optional<Point> yMinPoint = pointStream.get().min(Comparator.comparing(Point::getY));
-        Optional<Point> xMaxPoint = pointStream.get().max(Comparator.comparing(Point::getX));
-        Optional<Point> yMaxPoint = pointStream.get().max(Comparator.comparing(Point::getY));
+    /**
+     * 延长线的长度：外接矩形长边的1/10
+     */
+    double extensionLength(Envelope envelope) {
+        double maxLength = Math.max((envelope.getXMax() - envelope.getXMin()), (envelope.getYMax() - envelope.getYMin()));
+        return maxLength / 10;
+    }
 
-        if (xMinPoint.isPresent() && yMinPoint.isPresent() && xMaxPoint.isPresent() && yMaxPoint.isPresent()) {
-            return new Envelope(xMinPoint.get().getX(), yMinPoint.get().getY(),
-                    xMaxPoint.get().getX(), yMaxPoint.get().getY());
+    /**
+     * 点集的外接矩形，一次遍历求出四个边界
+     */
+    public Envelope getEnvelope(List<Point> originPoints) {
+        if (originPoints.isEmpty()) {
+            return new Envelope();
         }
-        return new Envelope();
+        Point first = originPoints.getFirst();
+        double xMin = first.getX(), yMin = first.getY(), xMax = first.getX(), yMax = first.getY();
+        for (Point point : originPoints) {
+            // 与按Double.compare排序取最值的结果一致
+            if (Double.compare(point.getX(), xMin) < 0) xMin = point.getX();
+            if (Double.compare(point.getY(), yMin) < 0) yMin = point.getY();
+            if (Double.compare(point.getX(), xMax) > 0) xMax = point.getX();
+            if (Double.compare(point.getY(), yMax) > 0) yMax = point.getY();
+        }
+        return new Envelope(xMin, yMin, xMax, yMax);
     }
 
-    private void extendSegment(Segment segment, double extensionLength) {
+    /**
+     * 点集的外接矩形，直接读取坐标数组，结果与{@link #getEnvelope(List)}相同
+     */
+    public Envelope getEnvelope(PointBuffer points) {
+        if (points.isEmpty()) {
+            return new Envelope();
+        }
+        double xMin = points.x(0), yMin = points.y(0), xMax = points.x(0), yMax = points.y(0);
+        for (int i = 1; i < points.size(); i++) {
+            double x = points.x(i), y = points.y(i);
+            if (Double.compare(x, xMin) < 0) xMin = x;
+            if (Double.compare(y, yMin) < 0) yMin = y;
+            if (Double.compare(x, xMax) > 0) xMax = x;
+            if (Double.compare(y, yMax) > 0) yMax = y;
+        }
+        return new Envelope(xMin, yMin, xMax, yMax);
+    }
+
+    /**
+     * 使用已知的外接矩形延长线段，多条线段共用同一个外接矩形时不必每次重新计算
+     *
+     * @param envelope 代表图形的点集的外接矩形
+     * @param segment  线段
+     */
+    public void extendSegment(Envelope envelope, Segment segment) {
+        extendSegment(segment, extensionLength(envelope));
+    }
+
+    void extendSegment(Segment segment, double extensionLength) {
         if (segment.getAllPoints().size() <= 3 || Shape.STRAIGHT.equals(segment.getShape())) {
             // 如果是直线，将头尾点向外延长
             Point[] points = extendSegment(segment.getBeginPoint(), segment.getEndPoint(), extensionLength);
@@ -237,7 +649,7 @@ public class IdentifyImpl {
                 segment.setOldEndPoint(segment.getEndPoint());
                 segment.setBeginPoint(points[0]);
                 segment.setEndPoint(points[1]);
-                segment.setAllPoints(Lists.newArrayList(points[0], points[1]));
+                segment.setAllPoints(PointView.view(Lists.newArrayList(points[0], points[1]), 0, 2));
             }
         } else if (Shape.CURVE.equals(segment.getShape())) {
             // 如果是曲线，取头两个点和尾两个点分别延长
@@ -247,7 +659,7 @@ public class IdentifyImpl {
             if (points.length >= 2) {
                 segment.setOldBeginPoint(segment.getBeginPoint());
                 segment.setBeginPoint(points[0]);
-                segment.getAllPoints().addFirst(points[0]);
+                segment.setAllPoints(PointView.of(segment.getAllPoints()).withHead(points[0]));
             }
 
             Point endPoint = segment.getEndPoint();
@@ -256,7 +668,7 @@ public class IdentifyImpl {
             if (points.length >= 2) {
                 segment.setOldEndPoint(segment.getEndPoint());
                 segment.setEndPoint(points[1]);
-                segment.getAllPoints().add(points[1]);
+                segment.setAllPoints(PointView.of(segment.getAllPoints()).withTail(points[1]));
             }
         }
     }
@@ -265,7 +677,7 @@ public class IdentifyImpl {
         double dx = endPoint.getX() - beginPoint.getX();
         double dy = endPoint.getY() - beginPoint.getY();
 
-        double length = Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
+        double length = GeometryKernels.length(dx, dy);
         double unitDx = dx / length;
         double unitDy = dy / length;
 
@@ -283,111 +695,273 @@ public class IdentifyImpl {
      * @return 拆分后的线段
      */
     public List<Segment> curveIntersection(List<Segment> segments) {
+        return curveIntersection(segments, new boolean[segments.size()], RecognitionBudget.Deadline.NONE);
+    }
+
+    /**
+     * @param bypass 预筛选剔除的线段，与其他线段都没有交点，不进索引，原样放入结果
+     */
+    private List<Segment> curveIntersection(List<Segment> segments, boolean[] bypass, RecognitionBudget.Deadline deadline) {
+        long start = System.nanoTime();
         List<Segment> result = new ArrayList<>();
-        List<Segment> copySegments = new ArrayList<>(segments);
-        segments.forEach(targetSegment -> result.addAll(interrupt(Lists.newArrayList(targetSegment), copySegments)));
+        List<Segment> copySegments = new ArrayList<>(segments.size());
+        for (int k = 0; k < segments.size(); k++) {
+            if (!bypass[k]) {
+                copySegments.add(segments.get(k));
+            }
+        }
+        // 对所有子线段建立网格索引，外接矩形不相交的子线段不可能有交点，不必再求交
+        SubSegmentIndex index = new SubSegmentIndex(copySegments);
+        for (int k = 0; k < segments.size(); k++) {
+            Segment targetSegment = segments.get(k);
+            if (deadline.expired() || bypass[k]) {
+                // 预算用完后剩下的线段，以及预筛选剔除的线段，不再打断
+                result.add(targetSegment);
+            } else {
+                result.addAll(interrupt(targetSegment, copySegments, index));
+            }
+        }
+        listener.stageCompleted(RecognitionListener.Stage.CURVE_INTERSECTION, System.nanoTime() - start, segments.size(), result.size(), 0);
         return result;
     }
 
-    private List<Segment> interrupt(List<Segment> targetSegments, List<Segment> interruptSegments) {
-        List<Segment> result = new ArrayList<>();
+    /**
+     * 将一条线段按它与其他线段的交点拆分
+     *
+     * @param targetSegment 要拆分的线段
+     * @param segments      所有线段，index为它们的子线段索引
+     * @return 拆分后的线段
+     */
+    List<Segment> curveIntersection(Segment targetSegment, List<Segment> segments, SubSegmentIndex index) {
+        return interrupt(targetSegment, segments, index);
+    }
 
-        List<Segment> tempSegments = new ArrayList<>();
-        Iterator<Segment> targetSegmentsIterator = targetSegments.iterator();
-        while (targetSegmentsIterator.hasNext()) {
-            Segment targetSegment = targetSegmentsIterator.next();
-            for (Segment interruptSegment : interruptSegments) {
-                List<Segment> interruptedSegments = interrupt(targetSegment, interruptSegment);
-                if (interruptedSegments.size() > 1) {
-                    // 产生交点打断了，跳出循环，此线段不再进行遍历
-                    result.remove(targetSegment);
-                    tempSegments.addAll(interruptedSegments);
-                    targetSegmentsIterator.remove();
-                    break;
-                } else {
-                    // 没有交点，暂时将其放入结果中
-                    if (!result.contains(targetSegment)) {
-                        result.add(targetSegment);
-                    }
+    /**
+     * 一次找出targetSegment与interruptSegments的所有交点，按在targetSegment上的位置排序后一次切成多段，
+     * 切出的线段不再重新与所有线段求交。去掉退化的线段和完全落在延长部分上的线段
+     *
+     * @return 打断后的线段；没有交点时只包含targetSegment本身
+     */
+    private List<Segment> interrupt(Segment targetSegment, List<Segment> interruptSegments, SubSegmentIndex index) {
+        PointView curve1 = PointView.of(targetSegment.getAllPoints());
+        List<Cut> cuts = new ArrayList<>();
+        IntList items = new IntList();
+        for (int i = 0; i < curve1.size() - 1; i++) {
+            Point p1 = curve1.get(i), p2 = curve1.get(i + 1);
+            index.query(p1, p2, items);
+            for (int n = 0; n < items.size(); n++) {
+                int item = items.get(n);
+                int k = index.segmentOf(item), j = index.startOf(item);
+                Segment interruptSegment = interruptSegments.get(k);
+                List<Point> curve2 = interruptSegment.getAllPoints();
+                Point p3 = curve2.get(j), p4 = curve2.get(j + 1);
+                Point intersection = splitPoint(p1, p2, p3, p4);
+                if (intersection != null && !samePoint(intersection, targetSegment.getBeginPoint()) &&
+                        !samePoint(intersection, targetSegment.getEndPoint()) &&
+                        !(isSameOrigin(targetSegment, interruptSegment) && isSharedVertex(intersection, p1, p2, p3, p4))) {
+                    // 存在交点,且交点不是头尾点，也不是同一条线段中相邻子线段的公共点，记下打断位置
+                    cuts.add(intersection == p2 ? new Cut(i + 1, 0, p2, k, i, j) : new Cut(i, GeometryKernels.length(
+                            intersection.getX() - p1.getX(), intersection.getY() - p1.getY()), intersection, k, i, j));
                 }
             }
         }
-        if (!tempSegments.isEmpty()) {
-            result.addAll(interrupt(tempSegments, interruptSegments));
+        if (cuts.isEmpty()) {
+            return Lists.newArrayList(targetSegment);
+        }
+
+        // 按位置排序，与上一个位置重合（吸附距离内）的合并，保留优先的一个
+        cuts.sort(Comparator.comparingInt(Cut::index).thenComparingDouble(Cut::offset));
+        List<Cut> distinctCuts = new ArrayList<>(cuts.size());
+        for (Cut cut : cuts) {
+            Point previous = distinctCuts.isEmpty() ? targetSegment.getBeginPoint() : distinctCuts.getLast().point();
+            if (GeometryKernels.length(cut.point().getX() - previous.getX(), cut.point().getY() - previous.getY()) > SNAP_DISTANCE) {
+                distinctCuts.add(cut);
+            } else if (!distinctCuts.isEmpty() && cut.precedes(distinctCuts.getLast())) {
+                distinctCuts.set(distinctCuts.size() - 1, cut);
+            }
+        }
+
+        // 依次在每个打断位置切开，交点是curve1中的点时（交点判定直接返回端点对象）两段共用此点，否则以交点作为附加的头尾点
+        List<Segment> pieces = new ArrayList<>(distinctCuts.size() + 1);
+        Point beginPoint = targetSegment.getBeginPoint();
+        int beginIndex = 0;
+        boolean beginInside = false;
+        for (Cut cut : distinctCuts) {
+            boolean inside = cut.point() != curve1.get(cut.index());
+            PointView piece = curve1.subView(beginIndex, cut.index() + 1);
+            if (beginInside) {
+                piece = piece.withHead(beginPoint);
+            }
+            pieces.add(newPiece(targetSegment, beginPoint, cut.point(), inside ? piece.withTail(cut.point()) : piece));
+            beginPoint = cut.point();
+            beginIndex = inside ? cut.index() + 1 : cut.index();
+            beginInside = inside;
         }
+        PointView rest = curve1.subView(beginIndex, curve1.size());
+        pieces.add(newPiece(targetSegment, beginPoint, targetSegment.getEndPoint(), beginInside ? rest.withHead(beginPoint) : rest));
+
+        List<Segment> result = inSplitOrder(pieces, distinctCuts);
         result.removeIf(segment -> {
             List<Point> points = segment.getAllPoints();
             return points.size() <= 2 &&
-                    Math.abs(points.getFirst().getX() - points.getLast().getX()) <= 0.0001 &&
-                    Math.abs(points.getFirst().getY() - points.getLast().getY()) <= 0.0001;
+                    Math.abs(points.getFirst().getX() - points.getLast().getX()) <= SNAP_DISTANCE &&
+                    Math.abs(points.getFirst().getY() - points.getLast().getY()) <= SNAP_DISTANCE;
         });
-        result.removeIf(segment -> (segment.getBeginPoint().getX() >= segment.getOldEndPoint().getX() && segment.getEndPoint().getX() > segment.getOldEndPoint().getX()) ||
-                (segment.getBeginPoint().getX() < segment.getOldBeginPoint().getX() && segment.getEndPoint().getX() <= segment.getOldBeginPoint().getX()));
+        result.removeIf(IdentifyImpl::isOutsideOldEnds);
         return result;
     }
 
-    private List<Segment> interrupt(Segment targetSegment, Segment interruptSegment) {
-        List<Point> curve1 = targetSegment.getAllPoints();
-        List<Point> curve2 = interruptSegment.getAllPoints();
+    /**
+     * 线段完全落在延长部分上：起点在原终点处或之后、终点在原终点之后，或者起点在原起点之前、终点在原起点处或之前。
+     * 按x坐标比较，相差不超过SNAP_DISTANCE视为同一位置，交点的舍入误差不影响结果
+     */
+    static boolean isOutsideOldEnds(Segment segment) {
+        double beginX = segment.getBeginPoint().getX(), endX = segment.getEndPoint().getX();
+        double oldBeginX = segment.getOldBeginPoint().getX(), oldEndX = segment.getOldEndPoint().getX();
+        return (beginX >= oldEndX - SNAP_DISTANCE && endX > oldEndX + SNAP_DISTANCE) ||
+                (beginX < oldBeginX - SNAP_DISTANCE && endX <= oldBeginX + SNAP_DISTANCE);
+    }
 
-        for (int i = 0; i < curve1.size() - 1; i++) {
-            for (int j = 0; j < curve2.size() - 1; j++) {
-                Point intersection = intersect(curve1.get(i), curve1.get(i + 1), curve2.get(j), curve2.get(j + 1));
-                if (intersection != null && !Objects.equals(intersection.getX(), targetSegment.getBeginPoint().getX()) &&
-                        !Objects.equals(intersection.getX(), targetSegment.getEndPoint().getX())) {
-                    // 存在交点,且交点不是头尾点，将targetSegment按此交点打断
-                    Segment newSegment1 = new Segment();
-                    newSegment1.setBeginPoint(targetSegment.getBeginPoint());
-                    newSegment1.setEndPoint(intersection);
-                    newSegment1.setOldBeginPoint(targetSegment.getOldBeginPoint());
-                    newSegment1.setOldEndPoint(targetSegment.getOldEndPoint());
-                    newSegment1.setAllPoints(new ArrayList<>(curve1.subList(0, i + 1)));
-                    newSegment1.getAllPoints().add(intersection);
-
-                    Segment newSegment2 = new Segment();
-                    newSegment2.setBeginPoint(intersection);
-                    newSegment2.setEndPoint(targetSegment.getEndPoint());
-                    newSegment2.setOldBeginPoint(targetSegment.getOldBeginPoint());
-                    newSegment2.setOldEndPoint(targetSegment.getOldEndPoint());
-                    newSegment2.setAllPoints(new ArrayList<>(curve1.subList(i + 1, curve1.size())));
-                    newSegment2.getAllPoints().addFirst(intersection);
-
-                    return Lists.newArrayList(newSegment2, newSegment1);
+    /**
+     * 按逐次二分打断时的顺序排列切出的线段：每次用优先的交点（打断线段在列表中靠前，其次在targetSegment上靠前）
+     * 把一段分成后、前两段，同一轮中没有交点的线段先输出，其余进入下一轮。
+     * constructShape和findArrows的结果与线段顺序有关，保持这个顺序使结果不变
+     *
+     * @param pieces 按位置排列的线段，第n个交点是pieces[n]与pieces[n + 1]的分界
+     */
+    private static List<Segment> inSplitOrder(List<Segment> pieces, List<Cut> cuts) {
+        List<Segment> result = new ArrayList<>(pieces.size());
+        // 每两个数为一段的交点范围[from, to)，对应pieces[from..to]
+        IntList ranges = new IntList();
+        ranges.add(0);
+        ranges.add(cuts.size());
+        while (!ranges.isEmpty()) {
+            IntList next = new IntList();
+            for (int r = 0; r < ranges.size(); r += 2) {
+                int from = ranges.get(r), to = ranges.get(r + 1);
+                if (from == to) {
+                    result.add(pieces.get(from));
+                    continue;
                 }
+                int first = from;
+                for (int c = from + 1; c < to; c++) {
+                    if (cuts.get(c).precedes(cuts.get(first))) {
+                        first = c;
+                    }
+                }
+                next.add(first + 1);
+                next.add(to);
+                next.add(from);
+                next.add(first);
             }
+            ranges = next;
         }
-        return Lists.newArrayList(targetSegment);
+        return result;
     }
 
-    private static Point intersect(Point p1, Point p2, Point p3, Point p4) {
-        double x1 = p1.getX();
-        double y1 = p1.getY();
-        double x2 = p2.getX();
-        double y2 = p2.getY();
-
-        double x3 = p3.getX();
-        double y3 = p3.getY();
-        double x4 = p4.getX();
-        double y4 = p4.getY();
+    private static Segment newPiece(Segment targetSegment, Point beginPoint, Point endPoint, List<Point> points) {
+        Segment newSegment = new Segment();
+        newSegment.setBeginPoint(beginPoint);
+        newSegment.setEndPoint(endPoint);
+        newSegment.setOldBeginPoint(targetSegment.getOldBeginPoint());
+        newSegment.setOldEndPoint(targetSegment.getOldEndPoint());
+        newSegment.setAllPoints(points);
+        return newSegment;
+    }
 
-        double d = (x1 - x2) * (y3 - y4) - (y1 - y2) * (x3 - x4);
+    /**
+     * 线段上的打断位置：交点在第index个子线段上，距子线段起点offset；交点是线段中的点时index为此点的下标，offset为0。
+     * 优先级按(打断线段下标segment, 子线段下标subSegment, 打断线段的子线段下标otherSubSegment)依次比较，越小越优先
+     */
+    private record Cut(int index, double offset, Point point, int segment, int subSegment, int otherSubSegment) {
 
-        if (d == 0) {
-            return null; // 两条线段平行或共线，没有交点
+        boolean precedes(Cut other) {
+            if (segment != other.segment) {
+                return segment < other.segment;
+            }
+            if (subSegment != other.subSegment) {
+                return subSegment < other.subSegment;
+            }
+            return otherSubSegment < other.otherSubSegment;
         }
+    }
 
-        double px = ((x1 * y2 - y1 * x2) * (x3 - x4) - (x1 - x2) * (x3 * y4 - y3 * x4)) / d;
-        double py = ((x1 * y2 - y1 * x2) * (y3 - y4) - (y1 - y2) * (x3 * y4 - y3 * x4)) / d;
+    /**
+     * 坐标完全相同
+     */
+    private static boolean samePoint(Point a, Point b) {
+        return a.getX() == b.getX() && a.getY() == b.getY();
+    }
 
-        if (px < Math.min(x1, x2) || px > Math.max(x1, x2) || px < Math.min(x3, x4) || px > Math.max(x3, x4)) {
-            return null; // 交点不在线段上
-        }
+    /**
+     * 两条线段由同一条线段打断而来（或就是同一条线段）
+     */
+    private static boolean isSameOrigin(Segment a, Segment b) {
+        return a.getOldBeginPoint() != null && a.getOldBeginPoint() == b.getOldBeginPoint() &&
+                a.getOldEndPoint() == b.getOldEndPoint();
+    }
+
+    /**
+     * 交点同时是两条子线段的端点，两者只是首尾相接
+     */
+    private static boolean isSharedVertex(Point point, Point p1, Point p2, Point p3, Point p4) {
+        return (samePoint(point, p1) || samePoint(point, p2)) && (samePoint(point, p3) || samePoint(point, p4));
+    }
 
-        if (py < Math.min(y1, y2) || py > Math.max(y1, y2) || py < Math.min(y3, y4) || py > Math.max(y3, y4)) {
-            return null; // 交点不在线段上
+    /**
+     * 子线段p1p2被p3p4打断的位置。交点由精确的方向判定求得，再按SNAP_DISTANCE吸附：
+     * p1p2两端都紧贴p3p4所在直线时视为重叠（如打断后的线段与原线段），不打断；
+     * 交点紧贴p1、p2时取端点本身，避免在上一次打断产生的交点旁边反复打断
+     *
+     * @return 打断的位置，没有交点时为null
+     */
+    private static Point splitPoint(Point p1, Point p2, Point p3, Point p4) {
+        Point intersection = intersect(p1, p2, p3, p4);
+        if (intersection == null || intersection == p1 || intersection == p2) {
+            return intersection;
+        }
+        if (GeometryPredicates.distanceToLine(p1, p3, p4) <= SNAP_DISTANCE &&
+                GeometryPredicates.distanceToLine(p2, p3, p4) <= SNAP_DISTANCE) {
+            return null;
+        }
+        if (GeometryKernels.length(intersection.getX() - p1.getX(), intersection.getY() - p1.getY()) <= SNAP_DISTANCE) {
+            return p1;
+        }
+        if (GeometryKernels.length(intersection.getX() - p2.getX(), intersection.getY() - p2.getY()) <= SNAP_DISTANCE) {
+            return p2;
         }
+        return intersection;
+    }
 
-        return new Point(px, py);
+    private static Point intersect(Point p1, Point p2, Point p3, Point p4) {
+        return GeometryPredicates.intersection(p1, p2, p3, p4);
+    }
+
+    /**
+     * 箭杆p1p2与线段p3p4的交点，按SNAP_DISTANCE吸附：两者重叠时没有交点；一方的端点紧贴另一方时交点为这个端点（箭杆的端点优先），
+     * 打断时产生的交点只是近似落在线段上，精确判定的结果取决于坐标的舍入，吸附后与坐标原点的选取无关
+     *
+     * @return 交点，没有交点时为null
+     */
+    private static Point arrowIntersection(Point p1, Point p2, Point p3, Point p4) {
+        if (GeometryPredicates.distanceToLine(p3, p1, p2) <= SNAP_DISTANCE &&
+                GeometryPredicates.distanceToLine(p4, p1, p2) <= SNAP_DISTANCE) {
+            return null;
+        }
+        // 先吸附到箭杆的端点，几条线段交于箭杆端点时到端点的距离都是0
+        if (GeometryPredicates.distanceToSegment(p1, p3, p4) <= SNAP_DISTANCE) {
+            return p1;
+        }
+        if (GeometryPredicates.distanceToSegment(p2, p3, p4) <= SNAP_DISTANCE) {
+            return p2;
+        }
+        if (GeometryPredicates.distanceToSegment(p3, p1, p2) <= SNAP_DISTANCE) {
+            return p3;
+        }
+        if (GeometryPredicates.distanceToSegment(p4, p1, p2) <= SNAP_DISTANCE) {
+            return p4;
+        }
+        return intersect(p1, p2, p3, p4);
     }
 
     /**
@@ -397,28 +971,33 @@ public class IdentifyImpl {
      * @return 如果能组成封闭图形/箭头，输出图形/箭头
      */
     public Map<Point, List<Segment>> constructShape(List<Segment> allSegments) {
-        Map<Point, List<Segment>> results = new HashMap<>();
-        Map<Point, List<Segment>> pointToSegmentsMap = new HashMap<>();
+        return constructShape(allSegments, RecognitionBudget.Deadline.NONE);
+    }
 
-        for (Segment segment : allSegments) {
-            Point beginPoint = segment.getBeginPoint();
-            Point endPoint = segment.getEndPoint();
+    private Map<Point, List<Segment>> constructShape(List<Segment> allSegments, RecognitionBudget.Deadline deadline) {
+        long start = System.nanoTime();
+        SegmentGraph graph = new SegmentGraph(allSegments);
+        FaceFinder faceFinder = new FaceFinder(graph);
+        Map<Point, List<Segment>> polygonResults = constructShape(graph, faceFinder, deadline);
+        listener.stageCompleted(RecognitionListener.Stage.CONSTRUCT_SHAPE, System.nanoTime() - start,
+                allSegments.size(), polygonResults.size(), faceFinder.walkedHalfEdges());
+        return polygonResults;
+    }
 
-            pointToSegmentsMap.computeIfAbsent(beginPoint, k -> new ArrayList<>()).add(segment);
-            pointToSegmentsMap.computeIfAbsent(endPoint, k -> new ArrayList<>()).add(segment);
-        }
+    /**
+     * 组合封闭图形，不回调listener。图中不相连的部分互不影响，可以分别调用后合并结果
+     */
+    Map<Point, List<Segment>> constructShape(SegmentGraph graph, FaceFinder faceFinder, RecognitionBudget.Deadline deadline) {
+        List<Segment> allSegments = graph.segments;
+        Map<Point, List<Segment>> results = new HashMap<>();
 
-        // 判断封闭图形，以每个点作为起点，进行深度优先遍历，查找能再次回到自己的路
-        for (Point startPoint : pointToSegmentsMap.keySet()) {
-            List<Segment> visitedSegments = new ArrayList<>();
-            List<Segment> closedPath = dfs(startPoint, startPoint, visitedSegments, pointToSegmentsMap);
-            if (closedPath != null) {
-                if (results.values().stream().anyMatch(segments ->
-                        segments.size() == closedPath.size() && new HashSet<>(segments).containsAll(closedPath))) {
-                    continue;
-                }
-                results.put(startPoint, closedPath);
+        // 线段已在交点处打断，构成平面图，每个有界面就是一个封闭图形
+        for (FaceFinder.Face face : faceFinder.boundedFaces(deadline::expired)) {
+            List<Segment> closedPath = new ArrayList<>(face.edges().length);
+            for (int edge : face.edges()) {
+                closedPath.add(allSegments.get(edge));
             }
+            results.put(faceKey(graph, face, results), closedPath);
         }
 
         // 再次判断相连的边的斜率是否近似，如果近似，合并
@@ -427,7 +1006,20 @@ public class IdentifyImpl {
 
 //        Map<Segment, List<Segment>> arrows =  findArrows(allSegments, polygonResults);
 
-         return polygonResults;
+        return polygonResults;
+    }
+
+    /**
+     * 封闭图形在结果中的键：取边界上第一个还没被用作键的顶点，都被用过时取形心
+     */
+    private Point faceKey(SegmentGraph graph, FaceFinder.Face face, Map<Point, List<Segment>> results) {
+        for (int vertex : face.vertices()) {
+            Point point = graph.vertexIndex.point(vertex);
+            if (!results.containsKey(point)) {
+                return point;
+            }
+        }
+        return face.centroid();
     }
 
     /**
@@ -437,38 +1029,37 @@ public class IdentifyImpl {
      * @return <箭杆，组成箭头的线段>
      */
     public Map<Segment, List<Segment>> findArrows(List<Segment> allSegments, Map<Point, List<Segment>> polygonSegments) {
+        return findArrows(allSegments, polygonSegments, RecognitionBudget.Deadline.NONE);
+    }
+
+    private Map<Segment, List<Segment>> findArrows(List<Segment> allSegments, Map<Point, List<Segment>> polygonSegments,
+                                                   RecognitionBudget.Deadline deadline) {
         // 判断小箭头
         // 先去除封闭图形的线段，这些线段不可能构成箭头，然后，将相连且斜率相近的线段合并。
         // 假设每一条线段都是箭杆，查找和它相交的每一条线段，是否存在夹角相似且小于90°，且长度近似相等的两条线段
-        List<Segment> copySegments = new ArrayList<>(allSegments);
-        copySegments.removeIf(segment -> polygonSegments.values().stream().anyMatch(segments -> segments.contains(segment)));
-        copySegments = mergeSegments(copySegments);
-        return findArrows(copySegments);
+        long start = System.nanoTime();
+        List<Segment> copySegments = arrowCandidates(allSegments, polygonSegments);
+        Map<Segment, List<Segment>> arrows = findArrows(copySegments, deadline);
+        listener.stageCompleted(RecognitionListener.Stage.FIND_ARROWS, System.nanoTime() - start, allSegments.size(), arrows.size(), 0);
+        return arrows;
     }
 
-    private List<Segment> dfs(Point startPoint, Point currentPoint,
-                              List<Segment> visitedSegments, Map<Point, List<Segment>> pointToSegmentsMap) {
-        List<Segment> currentSegments = pointToSegmentsMap.get(currentPoint);
-        for (Segment segment : currentSegments) {
-            if (visitedSegments.contains(segment)) {
-                continue;
-            }
-            Point nextPoint = segment.otherPoint(currentPoint);
-            visitedSegments.add(segment);
-            if (nextPoint.equals(startPoint)) {
-                return new ArrayList<>(visitedSegments);
-            }
-            List<Segment> result = dfs(startPoint, segment.otherPoint(currentPoint), visitedSegments, pointToSegmentsMap);
-            if (result != null) {
-                return result;
-            }
-            visitedSegments.remove(segment);
-        }
-        return null;
+    /**
+     * @return 去除封闭图形的线段并合并斜率相近的相连线段后，可能构成箭头的线段
+     */
+    List<Segment> arrowCandidates(List<Segment> allSegments, Map<Point, List<Segment>> polygonSegments) {
+        Set<Segment> excluded = Collections.newSetFromMap(new IdentityHashMap<>());
+        polygonSegments.values().forEach(excluded::addAll);
+        List<Segment> copySegments = new ArrayList<>(allSegments);
+        copySegments.removeIf(excluded::contains);
+        return mergeSegments(copySegments);
     }
 
     private List<Segment> mergeSegments(List<Segment> segments) {
         List<Segment> mergedSegments = new ArrayList<>();
+        if (segments.isEmpty()) {
+            return mergedSegments;
+        }
         Segment currentSegment = segments.getFirst();
         for (int i = 1; i < segments.size(); i++) {
             Segment nextSegment = segments.get(i);
@@ -495,6 +1086,12 @@ public class IdentifyImpl {
                 intersectPoints.retainAll(nextPoints);
                 currentPoints.removeAll(intersectPoints);
                 nextPoints.removeAll(intersectPoints);
+                if (currentPoints.isEmpty() || nextPoints.isEmpty()) {
+                    // 头尾点都重合（两条线段围成闭环），无法合并
+                    mergedSegments.add(currentSegment);
+                    currentSegment = nextSegment;
+                    continue;
+                }
 
                 Segment newSegment = new Segment();
                 newSegment.setBeginPoint(currentPoints.getFirst());
@@ -511,82 +1108,151 @@ public class IdentifyImpl {
         return mergedSegments;
     }
 
-    private Map<Segment, List<Segment>> findArrows(List<Segment> copySegments) {
+    private Map<Segment, List<Segment>> findArrows(List<Segment> copySegments, RecognitionBudget.Deadline deadline) {
         Map<Segment, List<Segment>> arrowMap = new HashMap<>();
+        GridIndex index = endpointIndex(copySegments);
+        IntList candidates = new IntList();
+        IntList endCandidates = new IntList();
         for (Segment segment : copySegments) {
-            // 假设此线段为箭杆，求出所有其他线段与其的交点，找出其中交点距离此线段起终点最近的两个点对应的线段
-            Map<Point, Segment> intersectedSegments = new HashMap<>();
-            Point begin1 = null, begin2 = null, end1 = null, end2 = null;
-            Segment beginSegment1 = null, beginSegment2 = null;
-            Segment endSegment1 = null, endSegment2 = null;
-            double distance1 = Double.MAX_VALUE, distance2 = Double.MAX_VALUE, distance3 = Double.MAX_VALUE, distance4 = Double.MAX_VALUE;
-            for (Segment otherSegment : copySegments) {
-                if (segment != otherSegment) {
-                    Point intersection = intersect(segment.getBeginPoint(), segment.getEndPoint(),
-                            otherSegment.getBeginPoint(), otherSegment.getEndPoint());
-                    if (intersection != null) {
-                        double beginDistance = getDistance(intersection, segment.getBeginPoint());
-                        if (distance1 > beginDistance) {
-                            if (begin1 != null) {
-                                distance2 = distance1;
-                                begin2 = begin1;
-                                beginSegment2 = beginSegment1;
-                            }
-                            distance1 = beginDistance;
-                            begin1 = intersection;
-                            beginSegment1 = otherSegment;
-                        } else if (distance2 > beginDistance && distance1 < beginDistance) {
-                            distance2 = beginDistance;
-                            begin2 = intersection;
-                            beginSegment2 = otherSegment;
+            if (deadline.expired()) {
+                break;
+            }
+            List<Segment> arrow = findArrow(segment, copySegments, index, candidates, endCandidates);
+            if (arrow != null) {
+                arrowMap.put(segment, arrow);
+            }
+        }
+        return arrowMap;
+    }
+
+    /**
+     * 按各线段头尾连线的外接矩形建网格索引
+     */
+    static GridIndex endpointIndex(List<Segment> segments) {
+        int count = segments.size();
+        double[] minX = new double[count];
+        double[] minY = new double[count];
+        double[] maxX = new double[count];
+        double[] maxY = new double[count];
+        for (int i = 0; i < count; i++) {
+            Point beginPoint = segments.get(i).getBeginPoint();
+            Point endPoint = segments.get(i).getEndPoint();
+            minX[i] = Math.min(beginPoint.getX(), endPoint.getX());
+            minY[i] = Math.min(beginPoint.getY(), endPoint.getY());
+            maxX[i] = Math.max(beginPoint.getX(), endPoint.getX());
+            maxY[i] = Math.max(beginPoint.getY(), endPoint.getY());
+        }
+        return new GridIndex(minX, minY, maxX, maxY, count);
+    }
+
+    /**
+     * @return 以segment为箭杆时查找箭头的范围：起终点周围此距离内的线段；长度不是正数时为NaN，不可能是箭杆
+     */
+    static double arrowSearchRadius(Segment segment) {
+        return arrowSearchRadius(GeometryKernels.length(segment.getBeginPoint().getX() - segment.getEndPoint().getX(),
+                segment.getBeginPoint().getY() - segment.getEndPoint().getY()));
+    }
+
+    private static double arrowSearchRadius(double length) {
+        return length > 0 ? length / 10 + VertexIndex.TOLERANCE : Double.NaN;
+    }
+
+    /**
+     * 假设segment为箭杆，查找组成箭头的线段
+     *
+     * @param copySegments 可能构成箭头的线段，index为它们的头尾连线索引；只需包含segment起终点附近的线段，顺序与完整列表一致
+     * @return [箭杆, 箭头的两条边]，不构成箭头时为null
+     */
+    List<Segment> findArrow(Segment segment, List<Segment> copySegments, GridIndex index, IntList candidates, IntList endCandidates) {
+        // 假设此线段为箭杆，找出与其相交的线段中，交点距离此线段起终点最近的两个点对应的线段
+        // 只有两个交点到起点（或终点）的距离都小于箭杆长度的1/10时才构成箭头，所以只需查询起终点附近的线段：
+        // 范围内的交点都在候选中且按原顺序比较，最近的两个交点与逐条比较所有线段的结果相同
+        double length = GeometryKernels.length(segment.getBeginPoint().getX() - segment.getEndPoint().getX(),
+                segment.getBeginPoint().getY() - segment.getEndPoint().getY());
+        if (!(length > 0)) {
+            return null;
+        }
+        // 查找范围与TiledRecognizer分配箭杆附近线段的范围相同
+        double radius = arrowSearchRadius(length);
+        queryNear(index, segment.getBeginPoint(), radius, candidates);
+        queryNear(index, segment.getEndPoint(), radius, endCandidates);
+        for (int k = 0; k < endCandidates.size(); k++) {
+            candidates.add(endCandidates.get(k));
+        }
+        candidates.sortDistinct();
+
+        Point begin1 = null, begin2 = null, end1 = null, end2 = null;
+        Segment beginSegment1 = null, beginSegment2 = null;
+        Segment endSegment1 = null, endSegment2 = null;
+        double distance1 = Double.MAX_VALUE, distance2 = Double.MAX_VALUE, distance3 = Double.MAX_VALUE, distance4 = Double.MAX_VALUE;
+        for (int k = 0; k < candidates.size(); k++) {
+            Segment otherSegment = copySegments.get(candidates.get(k));
+            if (segment != otherSegment) {
+                Point intersection = arrowIntersection(segment.getBeginPoint(), segment.getEndPoint(),
+                        otherSegment.getBeginPoint(), otherSegment.getEndPoint());
+                if (intersection != null) {
+                    double beginDistance = getDistance(intersection, segment.getBeginPoint());
+                    if (distance1 > beginDistance) {
+                        if (begin1 != null) {
+                            distance2 = distance1;
+                            begin2 = begin1;
+                            beginSegment2 = beginSegment1;
                         }
+                        distance1 = beginDistance;
+                        begin1 = intersection;
+                        beginSegment1 = otherSegment;
+                    } else if (distance2 > beginDistance && distance1 < beginDistance) {
+                        distance2 = beginDistance;
+                        begin2 = intersection;
+                        beginSegment2 = otherSegment;
+                    }
 
-                        double endDistance = getDistance(intersection, segment.getEndPoint());
-                        if (distance3 > endDistance) {
-                            if (end1 != null) {
-                                distance4 = distance3;
-                                end2 = end1;
-                                endSegment2 = endSegment1;
-                            }
-                            distance3 = endDistance;
-                            end1 = intersection;
-                            endSegment1 = otherSegment;
-                        } else if (distance4 > endDistance && distance3 < endDistance) {
-                            distance4 = endDistance;
-                            end2 = intersection;
-                            endSegment2 = otherSegment;
+                    double endDistance = getDistance(intersection, segment.getEndPoint());
+                    if (distance3 > endDistance) {
+                        if (end1 != null) {
+                            distance4 = distance3;
+                            end2 = end1;
+                            endSegment2 = endSegment1;
                         }
+                        distance3 = endDistance;
+                        end1 = intersection;
+                        endSegment1 = otherSegment;
+                    } else if (distance4 > endDistance && distance3 < endDistance) {
+                        distance4 = endDistance;
+                        end2 = intersection;
+                        endSegment2 = otherSegment;
                     }
                 }
             }
+        }
 
-            if (begin1 == null || begin2 == null || end1 == null || end2 == null) {
-                continue;
-            }
-            double length = Math.sqrt(Math.pow((segment.getBeginPoint().getX() - segment.getEndPoint().getX()), 2) +
-                    Math.pow((segment.getBeginPoint().getY() - segment.getEndPoint().getY()), 2));
-            if (Math.abs(distance1 - distance2) < length / 10 && distance1 < length / 10 &&
-                    distance2 < length / 10) {
-                // 计算这两条线段和箭杆的夹角，应该相似
-                double angle1 = calcAngle(beginSegment1, segment);
-                double angle2 = calcAngle(beginSegment2, segment);
-                if (angle1 - angle2 < 20) {
-                    arrowMap.put(segment, Lists.newArrayList(segment, beginSegment1, beginSegment2));
-                    continue;
-                }
+        if (begin1 == null || begin2 == null || end1 == null || end2 == null) {
+            return null;
+        }
+        if (Math.abs(distance1 - distance2) < length / 10 && distance1 < length / 10 &&
+                distance2 < length / 10) {
+            // 计算这两条线段和箭杆的夹角，应该相似
+            double angle1 = calcAngle(beginSegment1, segment);
+            double angle2 = calcAngle(beginSegment2, segment);
+            if (angle1 - angle2 < 20) {
+                return Lists.newArrayList(segment, beginSegment1, beginSegment2);
             }
-            if (Math.abs(distance3 - distance4) < length / 10 && distance3 < length / 10 && distance4 < length / 10) {
-                double angle3 = calcAngle(endSegment1, segment);
-                double angle4 = calcAngle(endSegment2, segment);
-                if (angle3 - angle4 < 20) {
-                    arrowMap.put(segment, Lists.newArrayList(segment, endSegment1, endSegment2));
-                }
+        }
+        if (Math.abs(distance3 - distance4) < length / 10 && distance3 < length / 10 && distance4 < length / 10) {
+            double angle3 = calcAngle(endSegment1, segment);
+            double angle4 = calcAngle(endSegment2, segment);
+            if (angle3 - angle4 < 20) {
+                return Lists.newArrayList(segment, endSegment1, endSegment2);
             }
         }
-        return arrowMap;
+        return null;
+    }
+
+    private static void queryNear(GridIndex index, Point point, double radius, IntList result) {
+        index.query(point.getX() - radius, point.getY() - radius, point.getX() + radius, point.getY() + radius, result);
     }
 
     private Double getDistance(Point beginPoint, Point endPoint) {
-        return Math.sqrt(Math.pow((endPoint.getX() - beginPoint.getX()), 2) + Math.pow((endPoint.getY() - beginPoint.getY()), 2));
+        return GeometryKernels.length(endPoint.getX() - beginPoint.getX(), endPoint.getY() - beginPoint.getY());
     }
 }
@@ -0,0 +1,73 @@
+package cool.islj.identifyshape.impl;
+
+import java.util.Arrays;
+
+/**
+ * 可增长的int数组，避免索引查询时装箱
+ */
+final class IntList {
+
+    private int[] values;
+
+    private int size;
+
+    IntList() {
+        this(16);
+    }
+
+    IntList(int capacity) {
+        values = new int[Math.max(capacity, 4)];
+    }
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    void set(int index, int value) {
+        values[index] = value;
+    }
+
+    int removeLast() {
+        return values[--size];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * 升序排序并去重
+     */
+    void sortDistinct() {
+        if (size < 2) {
+            return;
+        }
+        Arrays.sort(values, 0, size);
+        int count = 1;
+        for (int i = 1; i < size; i++) {
+            if (values[i] != values[count - 1]) {
+                values[count++] = values[i];
+            }
+        }
+        size = count;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
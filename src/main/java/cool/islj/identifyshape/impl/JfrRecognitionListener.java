@@ -0,0 +1,52 @@
+package cool.islj.identifyshape.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * 每个阶段完成时提交一个JFR事件，字段与{@link RecognitionListener#stageCompleted}的参数相同。
+ * 录制中没有启用此事件时只做一次开关判断，事件对象不会逃逸，JIT会消除分配
+ */
+public class JfrRecognitionListener implements RecognitionListener {
+
+    @Override
+    public void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+        StageEvent event = new StageEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.stage = stage.name();
+        event.nanos = nanos;
+        event.inputCount = inputCount;
+        event.outputCount = outputCount;
+        event.work = work;
+        event.commit();
+    }
+
+    @Name("cool.islj.identifyshape.Stage")
+    @Label("Recognition Stage")
+    @Category("IdentifyShape")
+    @Description("识别流程中一个阶段的耗时和数据量")
+    static class StageEvent extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+
+        @Label("Input Count")
+        long inputCount;
+
+        @Label("Output Count")
+        long outputCount;
+
+        @Label("Work")
+        long work;
+    }
+}
@@ -0,0 +1,48 @@
+package cool.islj.identifyshape.impl;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将各阶段的耗时和数据量发布到Micrometer，所有指标都带stage标签：
+ * <ul>
+ *     <li>identify.stage：耗时直方图。smooth、split每笔记录一次，是单笔的耗时，次数为笔画数；其他阶段每次识别记录一次；</li>
+ *     <li>identify.stage.input / identify.stage.output：输入、输出数量，含义见{@link Stage}，
+ *     例如smooth的input为原始点数、output为平滑后的点数，construct_shape的output为封闭图形数；</li>
+ *     <li>identify.stage.work：阶段内部的工作量，目前为construct_shape遍历的半边数。</li>
+ * </ul>
+ * 各阶段的指标在构造时注册好，回调时只做记录
+ */
+public class MicrometerRecognitionListener implements RecognitionListener {
+
+    private final Map<Stage, Meters> meters = new EnumMap<>(Stage.class);
+
+    public MicrometerRecognitionListener(MeterRegistry registry) {
+        for (Stage stage : Stage.values()) {
+            String tag = stage.name().toLowerCase(Locale.ROOT);
+            meters.put(stage, new Meters(
+                    Timer.builder("identify.stage").tag("stage", tag).publishPercentileHistogram().register(registry),
+                    DistributionSummary.builder("identify.stage.input").tag("stage", tag).register(registry),
+                    DistributionSummary.builder("identify.stage.output").tag("stage", tag).register(registry),
+                    DistributionSummary.builder("identify.stage.work").tag("stage", tag).register(registry)));
+        }
+    }
+
+    @Override
+    public void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+        Meters stageMeters = meters.get(stage);
+        stageMeters.timer.record(nanos, TimeUnit.NANOSECONDS);
+        stageMeters.input.record(inputCount);
+        stageMeters.output.record(outputCount);
+        stageMeters.work.record(work);
+    }
+
+    private record Meters(Timer timer, DistributionSummary input, DistributionSummary output, DistributionSummary work) {
+    }
+}
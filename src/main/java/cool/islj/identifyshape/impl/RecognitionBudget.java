@@ -0,0 +1,164 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.impl.RecognitionListener.Stage;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 一次识别的时间预算：总时长，以及可选的各阶段时长上限。
+ * 各阶段在处理每笔、每条线段、每个面之前检查预算。总时长用完或线程被中断时整次识别停止，
+ * 返回已经得到的部分结果；某个阶段超出自己的上限时只结束这个阶段，以它的部分输出继续后面的阶段。
+ * 两种情况的结果都标记为不完整，见{@link IdentifyImpl#recognize(cool.islj.identifyshape.entry.Sketch, RecognitionBudget)}。
+ * 平滑、切割和判断直线曲线是逐笔交替进行的，它们共用SMOOTH阶段的上限。
+ * 不可变，可被多个线程共用
+ */
+public final class RecognitionBudget {
+
+    /**
+     * 不限时，也不响应线程中断，与不带预算的识别相同
+     */
+    public static final RecognitionBudget UNLIMITED = new RecognitionBudget(Long.MAX_VALUE, new EnumMap<>(Stage.class));
+
+    /**
+     * 不限时，只在线程被中断时停止，例如取消了识别任务的Future
+     */
+    public static final RecognitionBudget INTERRUPTIBLE = new RecognitionBudget(Long.MAX_VALUE, new EnumMap<>(Stage.class));
+
+    private final long totalNanos;
+
+    private final Map<Stage, Long> stageNanos;
+
+    private RecognitionBudget(long totalNanos, Map<Stage, Long> stageNanos) {
+        this.totalNanos = totalNanos;
+        this.stageNanos = stageNanos;
+    }
+
+    /**
+     * @param total 整次识别的时长
+     */
+    public static RecognitionBudget of(Duration total) {
+        return new RecognitionBudget(toNanos(total), new EnumMap<>(Stage.class));
+    }
+
+    /**
+     * 限制某个阶段的时长，阶段仍受总时长限制
+     *
+     * @return 新的预算，this不变
+     */
+    public RecognitionBudget withStageLimit(Stage stage, Duration limit) {
+        Map<Stage, Long> limits = new EnumMap<>(Stage.class);
+        limits.putAll(stageNanos);
+        limits.put(stage, toNanos(limit));
+        return new RecognitionBudget(totalNanos, limits);
+    }
+
+    /**
+     * 从现在开始计时
+     */
+    Deadline start() {
+        return new Deadline(this);
+    }
+
+    private static long toNanos(Duration duration) {
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException("时长不能为负: " + duration);
+        }
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * 一次识别的计时，只在识别线程中使用。总时长用完或线程被中断后一直保持停止的状态，
+     * 阶段超出上限只持续到进入下一个阶段
+     */
+    static final class Deadline {
+
+        /**
+         * 永不过期，不带预算的方法使用。没有可变状态，可以共用
+         */
+        static final Deadline NONE = UNLIMITED.start();
+
+        private final RecognitionBudget budget;
+
+        private final boolean unlimited;
+
+        private final long start;
+
+        private long stageStart;
+
+        private long stageLimit = Long.MAX_VALUE;
+
+        /**
+         * 总时长用完或线程被中断
+         */
+        private boolean stopped;
+
+        /**
+         * 当前阶段超出上限，进入下一个阶段时清除
+         */
+        private boolean stageExceeded;
+
+        /**
+         * 曾经有阶段因预算提前结束
+         */
+        private boolean truncated;
+
+        private Deadline(RecognitionBudget budget) {
+            this.budget = budget;
+            this.unlimited = budget == UNLIMITED;
+            this.start = unlimited ? 0 : System.nanoTime();
+            this.stageStart = start;
+        }
+
+        /**
+         * 进入下一个阶段，开始按此阶段的上限计时
+         */
+        void enter(Stage stage) {
+            if (unlimited) {
+                return;
+            }
+            stageExceeded = false;
+            stageStart = System.nanoTime();
+            stageLimit = budget.stageNanos.getOrDefault(stage, Long.MAX_VALUE);
+        }
+
+        /**
+         * @return 当前阶段是否应当结束：总时长或此阶段的上限已经用完，或者线程已被中断
+         */
+        boolean expired() {
+            if (stopped || stageExceeded) {
+                return true;
+            }
+            if (unlimited) {
+                return false;
+            }
+            long now = System.nanoTime();
+            if (now - start >= budget.totalNanos || Thread.currentThread().isInterrupted()) {
+                stopped = true;
+            } else if (now - stageStart >= stageLimit) {
+                stageExceeded = true;
+            }
+            truncated |= stopped || stageExceeded;
+            return stopped || stageExceeded;
+        }
+
+        /**
+         * @return 之前的检查是否发现总时长用完或线程被中断，整次识别应当停止；不再读取时间
+         */
+        boolean isExpired() {
+            return stopped;
+        }
+
+        /**
+         * @return 是否有阶段因预算提前结束，结果不完整
+         */
+        boolean isTruncated() {
+            return truncated;
+        }
+    }
+}
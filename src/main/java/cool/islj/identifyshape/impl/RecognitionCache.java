@@ -0,0 +1,155 @@
+package cool.islj.identifyshape.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import cool.islj.identifyshape.Config;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.entry.Sketch;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 识别结果缓存：客户端撤销重做、重连、重绘时会重复提交同一幅草图，直接返回上次的结果。
+ * 缓存分两级，键都是内容的128位哈希（坐标、pixelDistance和Config中的参数）：
+ * <ul>
+ *     <li>整幅草图 -> 识别结果；</li>
+ *     <li>单笔 -> 切割并判断后、尚未延长的线段。只差一笔的草图未命中第一级时，其余笔画不再重新平滑切割。</li>
+ * </ul>
+ * 两级缓存都按点数加权限制容量，超出时淘汰最近最少使用的项。
+ * 缓存中的对象不交给调用方：每次返回结果的深复制，调用方可以随意修改（例如平移坐标）。
+ * 可被多个线程同时使用
+ */
+public class RecognitionCache {
+
+    /**
+     * 默认每级缓存最多保存的点数
+     */
+    public static final long DEFAULT_MAX_POINTS = 1 << 20;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final IdentifyImpl identify;
+
+    private final Cache<HashCode, RecognitionResult> results;
+
+    private final Cache<HashCode, List<Segment>> strokes;
+
+    public RecognitionCache(IdentifyImpl identify) {
+        this(identify, DEFAULT_MAX_POINTS, DEFAULT_MAX_POINTS);
+    }
+
+    /**
+     * @param maxResultPoints 识别结果缓存的容量，按结果中线段的点数计算
+     * @param maxStrokePoints 单笔缓存的容量，按线段的点数计算
+     */
+    public RecognitionCache(IdentifyImpl identify, long maxResultPoints, long maxStrokePoints) {
+        this.identify = identify;
+        this.results = CacheBuilder.newBuilder()
+                .maximumWeight(maxResultPoints)
+                .<HashCode, RecognitionResult>weigher((key, result) -> 1 + pointCount(result.getSegments()))
+                .recordStats()
+                .build();
+        this.strokes = CacheBuilder.newBuilder()
+                .maximumWeight(maxStrokePoints)
+                .<HashCode, List<Segment>>weigher((key, segments) -> 1 + pointCount(segments))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 识别一幅草图，内容与之前的某次调用相同时直接返回上次的结果
+     *
+     * @see IdentifyImpl#recognize(Sketch)
+     */
+    public RecognitionResult recognize(Sketch sketch) {
+        // 按笔画对象查键，不依赖识别流程调用prepare的次数和顺序
+        Map<PointBuffer, HashCode> strokeKeys = new IdentityHashMap<>();
+        Hasher hasher = HASH.newHasher().putInt(sketch.getStrokes().size());
+        for (PointBuffer stroke : sketch.getStrokes()) {
+            HashCode strokeKey = strokeKeys.computeIfAbsent(stroke, s -> strokeKey(s, sketch.getPixelDistance()));
+            hasher.putBytes(strokeKey.asBytes());
+        }
+        HashCode key = hasher.hash();
+
+        RecognitionResult result = results.getIfPresent(key);
+        if (result == null) {
+            result = identify.recognize(sketch, stroke -> prepareStroke(stroke, sketch.getPixelDistance(), strokeKeys.get(stroke)),
+                    RecognitionBudget.UNLIMITED);
+            results.put(key, result);
+        }
+        return IdentifyImpl.copyOf(result);
+    }
+
+    /**
+     * @return 识别结果缓存的命中、未命中和淘汰次数
+     */
+    public CacheStats resultStats() {
+        return results.stats();
+    }
+
+    /**
+     * @return 单笔缓存的命中、未命中和淘汰次数
+     */
+    public CacheStats strokeStats() {
+        return strokes.stats();
+    }
+
+    /**
+     * 清空两级缓存
+     */
+    public void invalidateAll() {
+        results.invalidateAll();
+        strokes.invalidateAll();
+    }
+
+    /**
+     * 缓存中的线段保持未延长的状态，每次返回副本
+     */
+    private List<Segment> prepareStroke(PointBuffer stroke, double pixelDistance, HashCode key) {
+        List<Segment> prepared = strokes.getIfPresent(key);
+        if (prepared == null) {
+            prepared = identify.prepareStroke(stroke, pixelDistance);
+            strokes.put(key, prepared);
+        }
+        List<Segment> copies = new ArrayList<>(prepared.size());
+        for (Segment segment : prepared) {
+            copies.add(IdentifyImpl.copyOf(segment));
+        }
+        return copies;
+    }
+
+    /**
+     * 单笔的键：坐标的位表示、pixelDistance和影响平滑切割的参数
+     */
+    private static HashCode strokeKey(PointBuffer stroke, double pixelDistance) {
+        Hasher hasher = HASH.newHasher()
+                .putInt(Config.DEVIATION_PIXEL)
+                .putInt(Config.SMOOTH_INTERVAL_COUNT)
+                .putDouble(pixelDistance)
+                .putInt(stroke.size());
+        double[] xs = stroke.xs();
+        double[] ys = stroke.ys();
+        for (int i = 0; i < stroke.size(); i++) {
+            hasher.putDouble(xs[i]).putDouble(ys[i]);
+        }
+        return hasher.hash();
+    }
+
+    private static int pointCount(List<Segment> segments) {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.getAllPoints().size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,69 @@
+package cool.islj.identifyshape.impl;
+
+/**
+ * 识别各阶段完成时的回调，用于统计耗时和数据量。
+ * 默认实现什么也不做，未启用时每个阶段只多两次System.nanoTime()调用。
+ * 同一个IdentifyImpl可能被多个线程同时使用，实现必须是线程安全的
+ */
+public interface RecognitionListener {
+
+    RecognitionListener NONE = new RecognitionListener() {
+    };
+
+    /**
+     * 识别阶段，及各阶段输入、输出数量的含义。
+     * SMOOTH、SPLIT是逐笔的预处理，每笔回调一次（RecognitionCache命中的笔画不回调），耗时和数量都是单笔的；
+     * 其余阶段在IdentifyImpl#recognize中每次识别回调一次。所以SMOOTH、SPLIT的回调次数是笔画数，
+     * 与其他阶段的次数、耗时分布不能直接比较，一次识别的预处理耗时需按识别累加。
+     * RecognitionSession、TiledRecognizer只复用其中部分阶段，回调的次数与recognize不同
+     */
+    enum Stage {
+        /**
+         * 平滑，每笔一次：原始点数 -> 平滑后的点数
+         */
+        SMOOTH,
+        /**
+         * 切割，每笔一次：平滑后的点数 -> 切割出的线段数
+         */
+        SPLIT,
+        /**
+         * 预筛选：笔画数 -> 跳过求交和组合封闭图形的笔画数
+         */
+        PRUNE,
+        /**
+         * 求交打断：延长后的线段数 -> 打断后的线段数
+         */
+        CURVE_INTERSECTION,
+        /**
+         * 组合封闭图形：线段数 -> 封闭图形数，work为遍历的半边数
+         */
+        CONSTRUCT_SHAPE,
+        /**
+         * 查找箭头：线段数 -> 箭头数
+         */
+        FIND_ARROWS
+    }
+
+    /**
+     * @param stage       阶段
+     * @param nanos       耗时，纳秒
+     * @param inputCount  输入数量
+     * @param outputCount 输出数量
+     * @param work        阶段内部的工作量，没有统计时为0
+     */
+    default void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+    }
+
+    /**
+     * @return 依次通知this和other的回调
+     */
+    default RecognitionListener andThen(RecognitionListener other) {
+        return new RecognitionListener() {
+            @Override
+            public void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+                RecognitionListener.this.stageCompleted(stage, nanos, inputCount, outputCount, work);
+                other.stageCompleted(stage, nanos, inputCount, outputCount, work);
+            }
+        };
+    }
+}
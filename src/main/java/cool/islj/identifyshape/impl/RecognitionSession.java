@@ -0,0 +1,295 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Envelope;
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 逐笔识别的会话：用户每画一笔（或撤销一笔）只重新计算受影响的部分，用于边画边反馈。
+ * <ul>
+ *     <li>新笔画只做自己的平滑、切割、判断和延长；</li>
+ *     <li>只有外接矩形与变化笔画相交的线段重新求交打断（打断结果只取决于与它外接矩形相交的线段及其先后顺序）；</li>
+ *     <li>封闭图形按连通分量缓存，线段没有变化的分量直接复用上次的结果；</li>
+ *     <li>延长线长度取决于所有点的外接矩形，外接矩形变化导致延长线长度变化时，所有线段重新延长、重新计算。</li>
+ * </ul>
+ * 结果与按添加顺序对剩下的所有笔画调用{@link IdentifyImpl#recognize}相同。
+ * 以下部分每次仍是整体重新计算，开销随笔画总数增长：
+ * <ul>
+ *     <li>求交用的子线段索引对所有延长后的线段重建；</li>
+ *     <li>划分连通分量时对全部线段重建线段图，只有分量内的组合封闭图形被复用；</li>
+ *     <li>查找箭头时的合并与线段在整个列表中的顺序有关，每次都对全部线段重新查找；</li>
+ *     <li>新笔画超出原有范围、使外接矩形的长边变长是边画边识别的常见情况，这时延长线长度变化，
+ *     所有笔画重新延长、重新求交，与整体识别的开销相同。</li>
+ * </ul>
+ * 会话不是线程安全的
+ */
+public class RecognitionSession {
+
+    private final IdentifyImpl identify;
+
+    private final Map<Integer, Stroke> strokes = new LinkedHashMap<>();
+
+    private int nextId;
+
+    /**
+     * 当前所有线段使用的延长线长度，NaN表示尚未延长
+     */
+    private double extensionLength = Double.NaN;
+
+    /**
+     * 连通分量的封闭图形缓存，以分量中的第一条线段（按对象）为键
+     */
+    private Map<Segment, Component> components = new IdentityHashMap<>();
+
+    private RecognitionResult result = new RecognitionResult(List.of(), Map.of(), Map.of());
+
+    public RecognitionSession(IdentifyImpl identify) {
+        this.identify = identify;
+    }
+
+    /**
+     * 添加一笔
+     *
+     * @param points        笔画的原始点集
+     * @param pixelDistance 每个像素代表的距离
+     * @return 笔画编号，用于撤销
+     */
+    public int addStroke(List<Point> points, double pixelDistance) {
+        PointBuffer buffer = PointBuffer.of(points);
+        Stroke stroke = new Stroke(buffer.isEmpty() ? null : identify.getEnvelope(buffer),
+                identify.prepareStroke(buffer, pixelDistance));
+        int id = nextId++;
+        strokes.put(id, stroke);
+
+        if (!updateExtensionLength()) {
+            stroke.extend(identify, extensionLength);
+            invalidateOverlapping(stroke.boxes);
+        }
+        refresh();
+        return id;
+    }
+
+    /**
+     * 撤销一笔
+     *
+     * @param id addStroke返回的笔画编号
+     */
+    public void removeStroke(int id) {
+        Stroke stroke = strokes.remove(id);
+        if (stroke == null) {
+            throw new IllegalArgumentException("笔画不存在: " + id);
+        }
+        if (!updateExtensionLength()) {
+            invalidateOverlapping(stroke.boxes);
+        }
+        refresh();
+    }
+
+    /**
+     * @return 当前所有笔画的识别结果
+     */
+    public RecognitionResult getResult() {
+        return result;
+    }
+
+    /**
+     * 重新计算延长线长度，有变化时所有笔画重新延长
+     *
+     * @return 是否重新延长了所有笔画
+     */
+    private boolean updateExtensionLength() {
+        Envelope envelope = null;
+        for (Stroke stroke : strokes.values()) {
+            if (stroke.envelope != null) {
+                envelope = IdentifyImpl.union(envelope, stroke.envelope);
+            }
+        }
+        double length = envelope == null ? Double.NaN : identify.extensionLength(envelope);
+        if (Double.compare(length, extensionLength) == 0) {
+            return false;
+        }
+        extensionLength = length;
+        strokes.values().forEach(stroke -> stroke.extend(identify, extensionLength));
+        return true;
+    }
+
+    /**
+     * 外接矩形与变化线段相交的线段需要重新求交打断
+     */
+    private void invalidateOverlapping(double[][] changedBoxes) {
+        for (Stroke stroke : strokes.values()) {
+            for (int i = 0; i < stroke.boxes.length; i++) {
+                if (stroke.pieces.get(i) == null) {
+                    continue;
+                }
+                for (double[] box : changedBoxes) {
+                    if (overlaps(stroke.boxes[i], box)) {
+                        stroke.pieces.set(i, null);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void refresh() {
+        List<Segment> extended = new ArrayList<>();
+        strokes.values().forEach(stroke -> extended.addAll(stroke.extended));
+        SubSegmentIndex index = new SubSegmentIndex(extended);
+
+        List<Segment> segments = new ArrayList<>();
+        for (Stroke stroke : strokes.values()) {
+            for (int i = 0; i < stroke.extended.size(); i++) {
+                if (stroke.pieces.get(i) == null) {
+                    stroke.pieces.set(i, identify.curveIntersection(stroke.extended.get(i), extended, index));
+                }
+                segments.addAll(stroke.pieces.get(i));
+            }
+        }
+
+        Map<Point, List<Segment>> shapes = constructShape(segments);
+        result = new RecognitionResult(segments, shapes, identify.findArrows(segments, shapes));
+    }
+
+    /**
+     * 按连通分量组合封闭图形，线段没有变化的分量复用上次的结果
+     */
+    private Map<Point, List<Segment>> constructShape(List<Segment> segments) {
+        Map<Segment, Component> newComponents = new IdentityHashMap<>();
+        Map<Point, List<Segment>> shapes = new HashMap<>();
+        for (List<Segment> componentSegments : connectedComponents(segments)) {
+            Component component = components.get(componentSegments.getFirst());
+            if (component == null || !component.sameSegments(componentSegments)) {
+                component = new Component(componentSegments, identify.constructShape(componentSegments));
+            }
+            newComponents.put(componentSegments.getFirst(), component);
+            shapes.putAll(component.shapes);
+        }
+        components = newComponents;
+        return shapes;
+    }
+
+    /**
+     * @return 每个连通分量的线段，分量内保持线段在列表中的顺序
+     */
+    private static List<List<Segment>> connectedComponents(List<Segment> segments) {
+        SegmentGraph graph = new SegmentGraph(segments);
+        int[] componentOf = new int[graph.vertexCount()];
+        Arrays.fill(componentOf, -1);
+        int componentCount = 0;
+        IntList stack = new IntList();
+        for (int start = 0; start < graph.vertexCount(); start++) {
+            if (componentOf[start] != -1) {
+                continue;
+            }
+            componentOf[start] = componentCount;
+            stack.add(start);
+            while (!stack.isEmpty()) {
+                int v = stack.removeLast();
+                for (int k = graph.adjacentStart[v]; k < graph.adjacentStart[v + 1]; k++) {
+                    int other = graph.otherVertex(graph.adjacentEdges[k], v);
+                    if (componentOf[other] == -1) {
+                        componentOf[other] = componentCount;
+                        stack.add(other);
+                    }
+                }
+            }
+            componentCount++;
+        }
+
+        List<List<Segment>> components = new ArrayList<>(componentCount);
+        for (int c = 0; c < componentCount; c++) {
+            components.add(new ArrayList<>());
+        }
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            components.get(componentOf[graph.edgeBegin[e]]).add(segments.get(e));
+        }
+        components.removeIf(List::isEmpty);
+        return components;
+    }
+
+    private static double[] box(Segment segment) {
+        double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (Point point : segment.getAllPoints()) {
+            box[0] = Math.min(box[0], point.getX());
+            box[1] = Math.min(box[1], point.getY());
+            box[2] = Math.max(box[2], point.getX());
+            box[3] = Math.max(box[3], point.getY());
+        }
+        return box;
+    }
+
+    /**
+     * 闭区间相交判断；含非有限值的矩形一律视为相交
+     */
+    private static boolean overlaps(double[] a, double[] b) {
+        return !(a[0] > b[2] || b[0] > a[2] || a[1] > b[3] || b[1] > a[3]);
+    }
+
+    private static final class Stroke {
+
+        /**
+         * 原始点集的外接矩形，空笔画为null
+         */
+        final Envelope envelope;
+
+        /**
+         * 切割并判断后、尚未延长的线段，延长时复制后再延长，自身保持不变
+         */
+        final List<Segment> prepared;
+
+        List<Segment> extended = List.of();
+
+        double[][] boxes = new double[0][];
+
+        /**
+         * 每条延长后线段打断得到的线段，null表示需要重新计算
+         */
+        List<List<Segment>> pieces = new ArrayList<>();
+
+        Stroke(Envelope envelope, List<Segment> prepared) {
+            this.envelope = envelope;
+            this.prepared = prepared;
+        }
+
+        void extend(IdentifyImpl identify, double extensionLength) {
+            extended = new ArrayList<>(prepared.size());
+            for (Segment segment : prepared) {
+                Segment copy = IdentifyImpl.copyOf(segment);
+                identify.extendSegment(copy, extensionLength);
+                extended.add(copy);
+            }
+            boxes = extended.stream().map(RecognitionSession::box).toArray(double[][]::new);
+            pieces = new ArrayList<>(Collections.nCopies(extended.size(), null));
+        }
+    }
+
+    /**
+     * 一个连通分量及其封闭图形
+     */
+    private record Component(List<Segment> segments, Map<Point, List<Segment>> shapes) {
+
+        boolean sameSegments(List<Segment> other) {
+            if (other.size() != segments.size()) {
+                return false;
+            }
+            for (int i = 0; i < other.size(); i++) {
+                if (other.get(i) != segments.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
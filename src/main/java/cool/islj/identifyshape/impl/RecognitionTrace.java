@@ -0,0 +1,68 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.Segment;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 记录识别流程各阶段的输出，用于排查识别错误。
+ * 默认实现什么也不做，未启用时每个阶段只多一次空方法调用，不复制数据。
+ * 传入的线段在之后的阶段会被修改（例如延长），实现必须在方法返回前复制需要的数据。
+ * 一个实例对应一次识别，见{@link AsyncTraceWriter#forRequest(String)}
+ */
+public interface RecognitionTrace {
+
+    RecognitionTrace NONE = new RecognitionTrace() {
+    };
+
+    /**
+     * 记录的阶段
+     */
+    enum Stage {
+        /**
+         * 原始点集，每笔一组
+         */
+        ORIGIN,
+        /**
+         * 平滑、切割并判断直线曲线后的线段，每笔一组
+         */
+        SPLIT,
+        /**
+         * 延长后的线段，每笔一组
+         */
+        EXTEND,
+        /**
+         * 求交打断后的线段
+         */
+        CURVE_INTERSECTION,
+        /**
+         * 封闭图形，每个图形一组
+         */
+        CONSTRUCT_SHAPE,
+        /**
+         * 箭头，每个箭头一组，第一条为箭杆
+         */
+        FIND_ARROWS
+    }
+
+    /**
+     * @param stroke 笔画的下标
+     */
+    default void stroke(int stroke, PointBuffer points) {
+    }
+
+    /**
+     * @param group 组号，含义见{@link Stage}，不分组的阶段为0
+     */
+    default void segments(Stage stage, int group, List<Segment> segments) {
+    }
+
+    default void shapes(Map<Point, List<Segment>> shapes) {
+    }
+
+    default void arrows(Map<Segment, List<Segment>> arrows) {
+    }
+}
@@ -0,0 +1,70 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Segment;
+
+import java.util.List;
+
+/**
+ * 线段组成的图：顶点为线段头尾点（经VertexIndex归并），边为线段，边的编号即线段在列表中的下标。
+ * 邻接表以CSR格式保存：adjacentEdges[adjacentStart[v], adjacentStart[v + 1])为与顶点v相连的边，
+ * 顺序与线段在列表中的顺序一致
+ */
+final class SegmentGraph {
+
+    final List<Segment> segments;
+
+    final VertexIndex vertexIndex;
+
+    /**
+     * 每条边头点、尾点的顶点编号
+     */
+    final int[] edgeBegin;
+    final int[] edgeEnd;
+
+    final int[] adjacentStart;
+    final int[] adjacentEdges;
+
+    SegmentGraph(List<Segment> segments) {
+        this.segments = segments;
+        int edgeCount = segments.size();
+        vertexIndex = new VertexIndex(edgeCount * 2);
+        edgeBegin = new int[edgeCount];
+        edgeEnd = new int[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            Segment segment = segments.get(e);
+            edgeBegin[e] = vertexIndex.add(segment.getBeginPoint());
+            edgeEnd[e] = vertexIndex.add(segment.getEndPoint());
+        }
+
+        int vertexCount = vertexIndex.size();
+        adjacentStart = new int[vertexCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            adjacentStart[edgeBegin[e] + 1]++;
+            adjacentStart[edgeEnd[e] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            adjacentStart[v + 1] += adjacentStart[v];
+        }
+        adjacentEdges = new int[edgeCount * 2];
+        int[] fill = new int[vertexCount];
+        for (int e = 0; e < edgeCount; e++) {
+            adjacentEdges[adjacentStart[edgeBegin[e]] + fill[edgeBegin[e]]++] = e;
+            adjacentEdges[adjacentStart[edgeEnd[e]] + fill[edgeEnd[e]]++] = e;
+        }
+    }
+
+    int vertexCount() {
+        return vertexIndex.size();
+    }
+
+    int edgeCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return 边e上顶点v对面的顶点
+     */
+    int otherVertex(int e, int v) {
+        return edgeBegin[e] == v ? edgeEnd[e] : edgeBegin[e];
+    }
+}
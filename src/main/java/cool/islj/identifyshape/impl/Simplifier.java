@@ -0,0 +1,34 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.PointBuffer;
+
+/**
+ * 点集简化（平滑）策略：在允许的偏差内去掉多余的点，后续的切割、求交都按简化后的点计算，
+ * 保留的点越少后续阶段越快。实现必须是无状态、线程安全的
+ */
+public interface Simplifier {
+
+    /**
+     * 原有的分组算法：每Config.SMOOTH_INTERVAL_COUNT个点一组，组内点到头尾连线的垂直距离都不超过阈值时只保留头尾。
+     * 点数不超过Config.SMOOTH_INTERVAL_COUNT时只保留最后一个点
+     */
+    Simplifier WINDOW = new WindowSimplifier();
+
+    /**
+     * Douglas–Peucker算法，用显式栈代替递归。去掉的点到前后保留的两点所在直线的距离不超过tolerance（两点重合时为到该点的距离）
+     */
+    Simplifier DOUGLAS_PEUCKER = new DouglasPeuckerSimplifier();
+
+    /**
+     * Visvalingam–Whyatt算法，按三角形面积从小到大删点，O(n log n)。
+     * tolerance按面积阈值tolerance²解释，不保证偏差距离，见VisvalingamSimplifier
+     */
+    Simplifier VISVALINGAM_WHYATT = new VisvalingamSimplifier();
+
+    /**
+     * @param points    原始点集
+     * @param tolerance 允许的偏差距离，各实现对它的解释见上面的常量
+     * @return 保留的点在points中的下标，升序；点集不为空时包含最后一个点
+     */
+    int[] simplify(PointBuffer points, double tolerance);
+}
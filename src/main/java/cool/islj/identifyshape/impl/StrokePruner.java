@@ -0,0 +1,120 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.Segment;
+
+import java.util.List;
+
+/**
+ * 求交之前的预筛选：只用每笔的廉价特征找出求交后不变、也不可能围成封闭图形的笔画，
+ * 这些笔画的线段不参与求交和组合封闭图形。一笔被剔除需要同时满足：
+ * <ul>
+ *     <li>只切出一条线段；</li>
+ *     <li>这条线段（已延长）各段方向的累计转角小于90°：各段方向都在90°以内，沿平均方向单调前进，不会自交；</li>
+ *     <li>线段的外接矩形外扩VertexIndex.TOLERANCE后与其他笔画的外接矩形都不重叠：
+ *     不会与其他笔画相交，头尾点也不会与其他笔画的顶点归并为同一个顶点。</li>
+ * </ul>
+ * 满足这些条件的线段求交后就是它本身，在平面图中是孤立的一条边。
+ * 外接矩形按延长后的线段计算，已经包含了头尾点延长出的范围，所以不再单独比较头尾点间距与延长长度
+ */
+final class StrokePruner {
+
+    private static final double MAX_TURNING = Math.PI / 2;
+
+    private StrokePruner() {
+    }
+
+    /**
+     * @param segments    所有笔画延长后的线段，按笔画顺序排列
+     * @param strokeStart 第n笔的线段为segments[strokeStart[n], strokeStart[n + 1])，长度为笔画数 + 1
+     * @return 每一笔是否被剔除
+     */
+    static boolean[] prune(List<Segment> segments, int[] strokeStart) {
+        int strokeCount = strokeStart.length - 1;
+        boolean[] pruned = new boolean[strokeCount];
+        // 先用线段数和转角筛选，都不满足时不必再建索引
+        boolean[] candidates = new boolean[strokeCount];
+        boolean anyCandidate = false;
+        for (int n = 0; n < strokeCount; n++) {
+            candidates[n] = strokeStart[n + 1] - strokeStart[n] == 1 && isMonotone(segments.get(strokeStart[n]).getAllPoints());
+            anyCandidate |= candidates[n];
+        }
+        if (!anyCandidate) {
+            return pruned;
+        }
+
+        // 没有线段的笔画不进索引，item为索引中的编号
+        int[] itemOf = new int[strokeCount];
+        int itemCount = 0;
+        for (int n = 0; n < strokeCount; n++) {
+            itemOf[n] = strokeStart[n] < strokeStart[n + 1] ? itemCount++ : -1;
+        }
+        double[] minX = new double[itemCount];
+        double[] minY = new double[itemCount];
+        double[] maxX = new double[itemCount];
+        double[] maxY = new double[itemCount];
+        for (int n = 0; n < strokeCount; n++) {
+            int item = itemOf[n];
+            if (item < 0) {
+                continue;
+            }
+            minX[item] = minY[item] = Double.POSITIVE_INFINITY;
+            maxX[item] = maxY[item] = Double.NEGATIVE_INFINITY;
+            for (int s = strokeStart[n]; s < strokeStart[n + 1]; s++) {
+                for (Point point : segments.get(s).getAllPoints()) {
+                    // 含NaN时外接矩形也为NaN，网格索引对每次查询都返回它，相当于与所有笔画重叠
+                    minX[item] = Math.min(minX[item], point.getX());
+                    minY[item] = Math.min(minY[item], point.getY());
+                    maxX[item] = Math.max(maxX[item], point.getX());
+                    maxY[item] = Math.max(maxY[item], point.getY());
+                }
+            }
+        }
+
+        GridIndex index = new GridIndex(minX, minY, maxX, maxY, itemCount);
+        IntList overlapping = new IntList();
+        for (int n = 0; n < strokeCount; n++) {
+            int item = itemOf[n];
+            if (!candidates[n] || !isFinite(minX[item], minY[item], maxX[item], maxY[item])) {
+                continue;
+            }
+            index.query(minX[item] - VertexIndex.TOLERANCE, minY[item] - VertexIndex.TOLERANCE,
+                    maxX[item] + VertexIndex.TOLERANCE, maxY[item] + VertexIndex.TOLERANCE, overlapping);
+            pruned[n] = overlapping.size() == 1 && overlapping.get(0) == item;
+        }
+        return pruned;
+    }
+
+    /**
+     * @return 折线没有长度为0的段，且累计转角小于MAX_TURNING
+     */
+    static boolean isMonotone(List<Point> points) {
+        double turning = 0;
+        double previousDx = 0, previousDy = 0;
+        for (int i = 0; i < points.size() - 1; i++) {
+            double dx = points.get(i + 1).getX() - points.get(i).getX();
+            double dy = points.get(i + 1).getY() - points.get(i).getY();
+            if (dx == 0 && dy == 0) {
+                return false;
+            }
+            if (i > 0) {
+                turning += Math.abs(Math.atan2(previousDx * dy - previousDy * dx, previousDx * dx + previousDy * dy));
+                if (!(turning < MAX_TURNING)) {
+                    return false;
+                }
+            }
+            previousDx = dx;
+            previousDy = dy;
+        }
+        return true;
+    }
+
+    private static boolean isFinite(double... values) {
+        for (double value : values) {
+            if (!Double.isFinite(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
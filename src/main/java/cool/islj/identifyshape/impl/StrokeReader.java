@@ -0,0 +1,126 @@
+package cool.islj.identifyshape.impl;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.Sketch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 流式读取笔画数据，坐标直接读入PointBuffer，不经过中间的Map、List和装箱的Double。
+ * 支持两种格式，一个文档是一幅草图：
+ * <pre>
+ * [{"coord": [[x, y], ...], "distance": d}, ...]
+ * {"allcoords": [{"coord": [[x, y], ...], "distance": d}, ...]}
+ * </pre>
+ * 一个文件中可以连续存放多个文档，每次只读取一幅草图，内存中不保留之前的草图。
+ * 点的坐标少于两个时忽略此点；各笔画distance不同时取最后一笔的值。
+ * 不是线程安全的
+ */
+public class StrokeReader implements Iterator<Sketch>, Closeable {
+
+    private final JsonReader reader;
+
+    public StrokeReader(Reader reader) {
+        this.reader = new JsonReader(reader);
+        // 允许多个顶层文档
+        this.reader.setLenient(true);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            return reader.peek() != JsonToken.END_DOCUMENT;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Sketch next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            Sketch sketch = new Sketch(new ArrayList<>(), 0d);
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("allcoords".equals(reader.nextName())) {
+                        readStrokes(sketch);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                readStrokes(sketch);
+            }
+            return sketch;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void readStrokes(Sketch sketch) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            PointBuffer points = new PointBuffer();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "coord" -> readCoords(points);
+                    case "distance" -> sketch.setPixelDistance(reader.nextDouble());
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            sketch.getStrokes().add(points);
+        }
+        reader.endArray();
+    }
+
+    private void readCoords(PointBuffer points) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            double x = 0, y = 0;
+            int count = 0;
+            while (reader.hasNext()) {
+                if (count == 0) {
+                    x = reader.nextDouble();
+                } else if (count == 1) {
+                    y = reader.nextDouble();
+                } else {
+                    reader.skipValue();
+                }
+                count++;
+            }
+            reader.endArray();
+            if (count >= 2) {
+                points.add(x, y);
+            }
+        }
+        reader.endArray();
+    }
+}
@@ -0,0 +1,71 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.Segment;
+
+import java.util.List;
+
+/**
+ * 一组线段的所有子线段（相邻两点连成的小段）的网格索引。
+ * 子线段按(线段下标, 起点下标)顺序编号，所以编号升序即线段在列表中的顺序
+ */
+final class SubSegmentIndex {
+
+    private final GridIndex grid;
+
+    private final int[] segmentOf;
+
+    private final int[] startOf;
+
+    SubSegmentIndex(List<Segment> segments) {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += Math.max(0, segment.getAllPoints().size() - 1);
+        }
+        double[] minX = new double[count];
+        double[] minY = new double[count];
+        double[] maxX = new double[count];
+        double[] maxY = new double[count];
+        segmentOf = new int[count];
+        startOf = new int[count];
+
+        int item = 0;
+        for (int k = 0; k < segments.size(); k++) {
+            List<Point> points = segments.get(k).getAllPoints();
+            for (int j = 0; j < points.size() - 1; j++) {
+                Point p1 = points.get(j);
+                Point p2 = points.get(j + 1);
+                minX[item] = Math.min(p1.getX(), p2.getX());
+                minY[item] = Math.min(p1.getY(), p2.getY());
+                maxX[item] = Math.max(p1.getX(), p2.getX());
+                maxY[item] = Math.max(p1.getY(), p2.getY());
+                segmentOf[item] = k;
+                startOf[item] = j;
+                item++;
+            }
+        }
+        grid = new GridIndex(minX, minY, maxX, maxY, count);
+    }
+
+    /**
+     * 查询外接矩形与p1、p2连成的小段相交的子线段
+     */
+    void query(Point p1, Point p2, IntList result) {
+        grid.query(Math.min(p1.getX(), p2.getX()), Math.min(p1.getY(), p2.getY()),
+                Math.max(p1.getX(), p2.getX()), Math.max(p1.getY(), p2.getY()), result);
+    }
+
+    /**
+     * @return 子线段所属线段在列表中的下标
+     */
+    int segmentOf(int item) {
+        return segmentOf[item];
+    }
+
+    /**
+     * @return 子线段起点在所属线段点集中的下标
+     */
+    int startOf(int item) {
+        return startOf[item];
+    }
+}
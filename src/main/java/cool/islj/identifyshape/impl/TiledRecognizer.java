@@ -0,0 +1,296 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Envelope;
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.entry.Sketch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * 分块并行识别大范围的图层（例如一个城市的所有草图放在一起）。
+ * 按正方形网格把工作分成若干块，各块在ForkJoinPool上并行处理，每块只为附近的线段建索引，
+ * 耗时取决于局部的密度而不是整个图层的大小：
+ * <ul>
+ *     <li>预处理：各笔互不相关，逐笔并行；</li>
+ *     <li>求交：线段按外接矩形中心归属一块，每块的索引包含与本块线段外接矩形相交的所有线段，
+ *     跨越块边界的线段在每块都参与求交，但只在所属的块中被打断；</li>
+ *     <li>组合封闭图形：面不会跨越不相连的部分，按连通分量拆开，分量按第一条线段所在的块分组；</li>
+ *     <li>查找箭头：箭杆按头尾连线中点归属一块，每块的索引包含各箭杆起终点查找范围内的线段。</li>
+ * </ul>
+ * 每块的线段列表保持在完整列表中的顺序，合并时也按完整列表的顺序，结果与{@link IdentifyImpl#recognize(Sketch)}相同。
+ * 不支持时间预算
+ */
+public class TiledRecognizer {
+
+    private final IdentifyImpl identify;
+
+    private final double tileSize;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param tileSize 块的边长，与坐标单位相同
+     */
+    public TiledRecognizer(IdentifyImpl identify, double tileSize) {
+        this(identify, tileSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param tileSize 块的边长，与坐标单位相同
+     * @param pool     执行各块的线程池
+     */
+    public TiledRecognizer(IdentifyImpl identify, double tileSize, ForkJoinPool pool) {
+        if (!(tileSize > 0) || Double.isInfinite(tileSize)) {
+            throw new IllegalArgumentException("tileSize必须是有限的正数: " + tileSize);
+        }
+        this.identify = identify;
+        this.tileSize = tileSize;
+        this.pool = pool;
+    }
+
+    /**
+     * 识别一个图层，所有笔画视为同一幅草图
+     */
+    public RecognitionResult recognize(Sketch layer) {
+        List<Segment> allSegments = prepare(layer);
+        List<Segment> segments = curveIntersection(allSegments);
+        Map<Point, List<Segment>> shapes = constructShape(segments);
+        Map<Segment, List<Segment>> arrows = findArrows(segments, shapes);
+        return new RecognitionResult(segments, shapes, arrows);
+    }
+
+    /**
+     * 逐笔并行平滑、切割并判断，再按整个图层的外接矩形延长
+     */
+    private List<Segment> prepare(Sketch layer) {
+        List<PointBuffer> strokes = layer.getStrokes();
+        List<Callable<List<Segment>>> tasks = new ArrayList<>(strokes.size());
+        for (PointBuffer stroke : strokes) {
+            tasks.add(() -> identify.prepareStroke(stroke, layer.getPixelDistance()));
+        }
+        Envelope envelope = null;
+        for (PointBuffer stroke : strokes) {
+            if (!stroke.isEmpty()) {
+                envelope = IdentifyImpl.union(envelope, identify.getEnvelope(stroke));
+            }
+        }
+        double extensionLength = identify.extensionLength(envelope == null ? new Envelope() : envelope);
+
+        List<Segment> allSegments = new ArrayList<>();
+        for (List<Segment> segments : invokeAll(tasks)) {
+            segments.forEach(segment -> identify.extendSegment(segment, extensionLength));
+            allSegments.addAll(segments);
+        }
+        return allSegments;
+    }
+
+    private List<Segment> curveIntersection(List<Segment> segments) {
+        int count = segments.size();
+        double[] minX = new double[count];
+        double[] minY = new double[count];
+        double[] maxX = new double[count];
+        double[] maxY = new double[count];
+        for (int k = 0; k < count; k++) {
+            minX[k] = minY[k] = Double.POSITIVE_INFINITY;
+            maxX[k] = maxY[k] = Double.NEGATIVE_INFINITY;
+            for (Point point : segments.get(k).getAllPoints()) {
+                minX[k] = Math.min(minX[k], point.getX());
+                minY[k] = Math.min(minY[k], point.getY());
+                maxX[k] = Math.max(maxX[k], point.getX());
+                maxY[k] = Math.max(maxY[k], point.getY());
+            }
+        }
+        GridIndex envelopes = new GridIndex(minX, minY, maxX, maxY, count);
+
+        Map<Long, IntList> tiles = new LinkedHashMap<>();
+        for (int k = 0; k < count; k++) {
+            tiles.computeIfAbsent(tileOf((minX[k] + maxX[k]) / 2, (minY[k] + maxY[k]) / 2), key -> new IntList()).add(k);
+        }
+        List<List<Segment>> pieces = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            pieces.add(null);
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(tiles.size());
+        for (IntList owned : tiles.values()) {
+            tasks.add(() -> {
+                // 与本块线段外接矩形的并集相交的线段，按编号升序，即完整列表中的顺序
+                double tileMinX = Double.POSITIVE_INFINITY, tileMinY = Double.POSITIVE_INFINITY;
+                double tileMaxX = Double.NEGATIVE_INFINITY, tileMaxY = Double.NEGATIVE_INFINITY;
+                for (int n = 0; n < owned.size(); n++) {
+                    int k = owned.get(n);
+                    tileMinX = Math.min(tileMinX, minX[k]);
+                    tileMinY = Math.min(tileMinY, minY[k]);
+                    tileMaxX = Math.max(tileMaxX, maxX[k]);
+                    tileMaxY = Math.max(tileMaxY, maxY[k]);
+                }
+                IntList nearby = new IntList();
+                envelopes.query(tileMinX, tileMinY, tileMaxX, tileMaxY, nearby);
+                List<Segment> nearbySegments = select(segments, nearby);
+                SubSegmentIndex index = new SubSegmentIndex(nearbySegments);
+                for (int n = 0; n < owned.size(); n++) {
+                    int k = owned.get(n);
+                    pieces.set(k, identify.curveIntersection(segments.get(k), nearbySegments, index));
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+
+        List<Segment> result = new ArrayList<>();
+        pieces.forEach(result::addAll);
+        return result;
+    }
+
+    private Map<Point, List<Segment>> constructShape(List<Segment> segments) {
+        // 并查集求连通分量，分量内的线段保持原顺序
+        SegmentGraph graph = new SegmentGraph(segments);
+        int[] parent = new int[graph.vertexCount()];
+        for (int v = 0; v < parent.length; v++) {
+            parent[v] = v;
+        }
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            parent[find(parent, graph.edgeBegin[e])] = find(parent, graph.edgeEnd[e]);
+        }
+        Map<Integer, List<Segment>> components = new LinkedHashMap<>();
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            components.computeIfAbsent(find(parent, graph.edgeBegin[e]), root -> new ArrayList<>()).add(segments.get(e));
+        }
+        Map<Long, List<List<Segment>>> tiles = new LinkedHashMap<>();
+        for (List<Segment> component : components.values()) {
+            Point point = component.getFirst().getBeginPoint();
+            tiles.computeIfAbsent(tileOf(point.getX(), point.getY()), key -> new ArrayList<>()).add(component);
+        }
+
+        List<Callable<Map<Point, List<Segment>>>> tasks = new ArrayList<>(tiles.size());
+        for (List<List<Segment>> tile : tiles.values()) {
+            tasks.add(() -> {
+                Map<Point, List<Segment>> shapes = new HashMap<>();
+                for (List<Segment> component : tile) {
+                    SegmentGraph componentGraph = new SegmentGraph(component);
+                    shapes.putAll(identify.constructShape(componentGraph, new FaceFinder(componentGraph), RecognitionBudget.Deadline.NONE));
+                }
+                return shapes;
+            });
+        }
+        Map<Point, List<Segment>> shapes = new HashMap<>();
+        invokeAll(tasks).forEach(shapes::putAll);
+        return shapes;
+    }
+
+    private Map<Segment, List<Segment>> findArrows(List<Segment> segments, Map<Point, List<Segment>> shapes) {
+        List<Segment> candidates = identify.arrowCandidates(segments, shapes);
+        int count = candidates.size();
+        GridIndex endpoints = IdentifyImpl.endpointIndex(candidates);
+
+        Map<Long, IntList> tiles = new LinkedHashMap<>();
+        for (int k = 0; k < count; k++) {
+            Point beginPoint = candidates.get(k).getBeginPoint();
+            Point endPoint = candidates.get(k).getEndPoint();
+            tiles.computeIfAbsent(tileOf((beginPoint.getX() + endPoint.getX()) / 2, (beginPoint.getY() + endPoint.getY()) / 2),
+                    key -> new IntList()).add(k);
+        }
+        List<List<Segment>> arrows = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            arrows.add(null);
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(tiles.size());
+        for (IntList owned : tiles.values()) {
+            tasks.add(() -> {
+                // 本块各箭杆起终点查找范围的并集内的线段，按编号升序
+                double tileMinX = Double.POSITIVE_INFINITY, tileMinY = Double.POSITIVE_INFINITY;
+                double tileMaxX = Double.NEGATIVE_INFINITY, tileMaxY = Double.NEGATIVE_INFINITY;
+                for (int n = 0; n < owned.size(); n++) {
+                    Segment segment = candidates.get(owned.get(n));
+                    double radius = IdentifyImpl.arrowSearchRadius(segment);
+                    if (Double.isNaN(radius)) {
+                        continue;
+                    }
+                    for (Point point : List.of(segment.getBeginPoint(), segment.getEndPoint())) {
+                        tileMinX = Math.min(tileMinX, point.getX() - radius);
+                        tileMinY = Math.min(tileMinY, point.getY() - radius);
+                        tileMaxX = Math.max(tileMaxX, point.getX() + radius);
+                        tileMaxY = Math.max(tileMaxY, point.getY() + radius);
+                    }
+                }
+                if (tileMinX > tileMaxX) {
+                    return null;
+                }
+                IntList nearby = new IntList();
+                endpoints.query(tileMinX, tileMinY, tileMaxX, tileMaxY, nearby);
+                List<Segment> nearbySegments = select(candidates, nearby);
+                GridIndex index = IdentifyImpl.endpointIndex(nearbySegments);
+                IntList beginCandidates = new IntList();
+                IntList endCandidates = new IntList();
+                for (int n = 0; n < owned.size(); n++) {
+                    int k = owned.get(n);
+                    arrows.set(k, identify.findArrow(candidates.get(k), nearbySegments, index, beginCandidates, endCandidates));
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+
+        // 按完整列表的顺序放入，与逐条查找时相等的键互相覆盖的结果一致
+        Map<Segment, List<Segment>> arrowMap = new HashMap<>();
+        for (int k = 0; k < count; k++) {
+            if (arrows.get(k) != null) {
+                arrowMap.put(candidates.get(k), arrows.get(k));
+            }
+        }
+        return arrowMap;
+    }
+
+    /**
+     * @return 点所在的块，列号和行号合成一个long
+     */
+    private long tileOf(double x, double y) {
+        long column = (long) Math.floor(x / tileSize);
+        long row = (long) Math.floor(y / tileSize);
+        return column << 32 ^ (row & 0xFFFFFFFFL);
+    }
+
+    private static List<Segment> select(List<Segment> segments, IntList indexes) {
+        List<Segment> selected = new ArrayList<>(indexes.size());
+        for (int n = 0; n < indexes.size(); n++) {
+            selected.add(segments.get(indexes.get(n)));
+        }
+        return selected;
+    }
+
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("分块识别被中断", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException("识别失败", e.getCause());
+            }
+        }
+        return results;
+    }
+}
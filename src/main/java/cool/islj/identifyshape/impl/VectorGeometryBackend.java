@@ -0,0 +1,47 @@
+package cool.islj.identifyshape.impl;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * GeometryKernels的Vector API实现，只在jdk.incubator.vector模块可用时通过反射加载。
+ * 每个分量的运算顺序与标量实现相同，不满一个向量的尾部交给标量实现
+ */
+final class VectorGeometryBackend extends GeometryKernels.ScalarBackend {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void perpendicularDistances(double[] xs, double[] ys, int from, int count,
+                                       double originX, double originY,
+                                       double directionX, double directionY, double directionLength,
+                                       double[] result) {
+        int k = 0;
+        for (int bound = SPECIES.loopBound(count); k < bound; k += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, xs, from + k).sub(originX);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, ys, from + k).sub(originY);
+            DoubleVector length = dx.mul(dx).add(dy.mul(dy)).sqrt();
+            DoubleVector projectLength = dx.mul(directionX).add(dy.mul(directionY)).div(directionLength);
+            length.mul(length).sub(projectLength.mul(projectLength)).sqrt().intoArray(result, k);
+        }
+        perpendicularDistances(xs, ys, from, k, count, originX, originY, directionX, directionY, directionLength, result);
+    }
+
+    @Override
+    public void turnCosines(double[] xs, double[] ys, int size, int step, double[] result) {
+        int to = size - step;
+        int i = 1;
+        for (int bound = 1 + SPECIES.loopBound(Math.max(0, to - 1)); i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, xs, i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, ys, i);
+            DoubleVector dx1 = DoubleVector.fromArray(SPECIES, xs, i - 1).sub(x);
+            DoubleVector dy1 = DoubleVector.fromArray(SPECIES, ys, i - 1).sub(y);
+            DoubleVector dx2 = DoubleVector.fromArray(SPECIES, xs, i + step).sub(x);
+            DoubleVector dy2 = DoubleVector.fromArray(SPECIES, ys, i + step).sub(y);
+            DoubleVector length1 = dx1.mul(dx1).add(dy1.mul(dy1)).sqrt();
+            DoubleVector length2 = dx2.mul(dx2).add(dy2.mul(dy2)).sqrt();
+            dx1.mul(dx2).add(dy1.mul(dy2)).div(length1.mul(length2)).intoArray(result, i);
+        }
+        turnCosines(xs, ys, i, to, step, result);
+    }
+}
@@ -0,0 +1,148 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 顶点索引：把坐标近似相等的点归为同一个顶点，并分配从0开始的连续编号。
+ * 按容差大小划分网格，点落在哪个格子就只和周围3x3个格子里的顶点比较，
+ * 不依赖Point.hashCode（它与带容差的equals不一致）
+ */
+final class VertexIndex {
+
+    /**
+     * 与Point.equals一致的容差
+     */
+    static final double TOLERANCE = 0.0001;
+
+    private static final int EMPTY = -1;
+
+    private final List<Point> vertices = new ArrayList<>();
+
+    /**
+     * 坐标不是有限值的点无法放进网格，只按对象本身区分
+     */
+    private final Map<Point, Integer> nonFiniteVertices = new IdentityHashMap<>();
+
+    /**
+     * 开放寻址哈希表：格子坐标(cellX, cellY) -> 顶点编号。
+     * 同一格子内的两点一般已在容差内被归并，但除法舍入可能让一个格子登记多个顶点，查找时全部比较
+     */
+    private long[] cellXs;
+    private long[] cellYs;
+    private int[] cellVertices;
+    private int cellCount;
+
+    VertexIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        cellXs = new long[capacity];
+        cellYs = new long[capacity];
+        cellVertices = new int[capacity];
+        Arrays.fill(cellVertices, EMPTY);
+    }
+
+    /**
+     * @return 点对应的顶点编号，容差内没有已知顶点时新建一个
+     */
+    int add(Point point) {
+        int id = find(point);
+        if (id != EMPTY) {
+            return id;
+        }
+        id = vertices.size();
+        vertices.add(point);
+        if (isFinite(point)) {
+            put(cell(point.getX()), cell(point.getY()), id);
+        } else {
+            nonFiniteVertices.put(point, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return 点对应的顶点编号，不存在时返回-1
+     */
+    int find(Point point) {
+        if (!isFinite(point)) {
+            return nonFiniteVertices.getOrDefault(point, EMPTY);
+        }
+        long cellX = cell(point.getX());
+        long cellY = cell(point.getY());
+        int mask = cellXs.length - 1;
+        int result = EMPTY;
+        for (long x = cellX - 1; x <= cellX + 1; x++) {
+            for (long y = cellY - 1; y <= cellY + 1; y++) {
+                for (int slot = hash(x, y) & mask; cellVertices[slot] != EMPTY; slot = (slot + 1) & mask) {
+                    int id = cellVertices[slot];
+                    if (cellXs[slot] == x && cellYs[slot] == y && (result == EMPTY || id < result)) {
+                        Point vertex = vertices.get(id);
+                        if (Math.abs(vertex.getX() - point.getX()) < TOLERANCE && Math.abs(vertex.getY() - point.getY()) < TOLERANCE) {
+                            result = id;
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 顶点的代表点，即第一个归入此顶点的点
+     */
+    Point point(int id) {
+        return vertices.get(id);
+    }
+
+    int size() {
+        return vertices.size();
+    }
+
+    private static long cell(double value) {
+        return (long) Math.floor(value / TOLERANCE);
+    }
+
+    private static boolean isFinite(Point point) {
+        return Double.isFinite(point.getX()) && Double.isFinite(point.getY());
+    }
+
+    private void put(long cellX, long cellY, int id) {
+        if ((cellCount + 1) * 2 > cellXs.length) {
+            resize();
+        }
+        int mask = cellXs.length - 1;
+        int slot = hash(cellX, cellY) & mask;
+        while (cellVertices[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        cellXs[slot] = cellX;
+        cellYs[slot] = cellY;
+        cellVertices[slot] = id;
+        cellCount++;
+    }
+
+    private void resize() {
+        long[] oldXs = cellXs;
+        long[] oldYs = cellYs;
+        int[] oldVertices = cellVertices;
+        cellXs = new long[oldXs.length * 2];
+        cellYs = new long[oldYs.length * 2];
+        cellVertices = new int[oldVertices.length * 2];
+        Arrays.fill(cellVertices, EMPTY);
+        cellCount = 0;
+        for (int i = 0; i < oldVertices.length; i++) {
+            if (oldVertices[i] != EMPTY) {
+                put(oldXs[i], oldYs[i], oldVertices[i]);
+            }
+        }
+    }
+
+    private static int hash(long cellX, long cellY) {
+        long h = cellX * 0x9E3779B97F4A7C15L + cellY * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,165 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.PointBuffer;
+
+/**
+ * Visvalingam–Whyatt：每个中间点的权重是它与前后相邻点围成的三角形面积，
+ * 反复删除面积最小的点并更新相邻点的面积，直到最小面积不小于tolerance²。
+ * tolerance在这里是面积阈值的边长，不是偏差距离的上限：偏离底边h、底边长b的点面积为b·h/2，
+ * 底边短于2·tolerance时偏差超过tolerance的点也会被删除，底边较长时几乎共线的点也会保留。
+ * 结果的偏差没有上界，需要保证偏差时用Douglas–Peucker。
+ * 相邻点更新后的面积不小于刚删除的点的面积，保证删除顺序单调。
+ * 面积放在带位置表的二叉堆中，每次删除和更新O(log n)，共O(n log n)
+ */
+final class VisvalingamSimplifier implements Simplifier {
+
+    @Override
+    public int[] simplify(PointBuffer points, double tolerance) {
+        int size = points.size();
+        double[] xs = points.xs();
+        double[] ys = points.ys();
+        double threshold = tolerance * tolerance;
+
+        // 双向链表记录删点后的相邻关系
+        int[] previous = new int[size];
+        int[] next = new int[size];
+        double[] areas = new double[size];
+        for (int i = 0; i < size; i++) {
+            previous[i] = i - 1;
+            next[i] = i + 1;
+        }
+        AreaHeap heap = new AreaHeap(areas, size);
+        for (int i = 1; i < size - 1; i++) {
+            areas[i] = area(xs, ys, i - 1, i, i + 1);
+            heap.add(i);
+        }
+
+        boolean[] removed = new boolean[size];
+        while (!heap.isEmpty() && areas[heap.peek()] < threshold) {
+            int point = heap.poll();
+            double removedArea = areas[point];
+            removed[point] = true;
+            int before = previous[point];
+            int after = next[point];
+            next[before] = after;
+            previous[after] = before;
+            if (before > 0) {
+                areas[before] = Math.max(removedArea, area(xs, ys, previous[before], before, after));
+                heap.update(before);
+            }
+            if (after < size - 1) {
+                areas[after] = Math.max(removedArea, area(xs, ys, before, after, next[after]));
+                heap.update(after);
+            }
+        }
+
+        IntList result = new IntList();
+        for (int i = 0; i < size; i++) {
+            if (!removed[i]) {
+                result.add(i);
+            }
+        }
+        return result.toArray();
+    }
+
+    private static double area(double[] xs, double[] ys, int a, int b, int c) {
+        return Math.abs((xs[b] - xs[a]) * (ys[c] - ys[a]) - (xs[c] - xs[a]) * (ys[b] - ys[a])) / 2;
+    }
+
+    /**
+     * 按areas从小到大的最小堆，元素为点的下标，positions记录每个点在堆中的位置以便更新
+     */
+    private static final class AreaHeap {
+
+        private final double[] areas;
+
+        private final int[] heap;
+
+        private final int[] positions;
+
+        private int size;
+
+        AreaHeap(double[] areas, int capacity) {
+            this.areas = areas;
+            this.heap = new int[capacity];
+            this.positions = new int[capacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int peek() {
+            return heap[0];
+        }
+
+        void add(int point) {
+            heap[size] = point;
+            positions[point] = size;
+            siftUp(size++);
+        }
+
+        int poll() {
+            int top = heap[0];
+            size--;
+            if (size > 0) {
+                move(heap[size], 0);
+                siftDown(0);
+            }
+            return top;
+        }
+
+        /**
+         * 点的面积变化后调整其位置
+         */
+        void update(int point) {
+            siftUp(positions[point]);
+            siftDown(positions[point]);
+        }
+
+        private void siftUp(int position) {
+            int point = heap[position];
+            while (position > 0) {
+                int parent = (position - 1) >> 1;
+                if (!less(point, heap[parent])) {
+                    break;
+                }
+                move(heap[parent], position);
+                position = parent;
+            }
+            move(point, position);
+        }
+
+        private void siftDown(int position) {
+            int point = heap[position];
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && less(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!less(heap[child], point)) {
+                    break;
+                }
+                move(heap[child], position);
+                position = child;
+            }
+            move(point, position);
+        }
+
+        /**
+         * 面积相同时下标小的优先，结果与插入顺序无关
+         */
+        private boolean less(int a, int b) {
+            int compare = Double.compare(areas[a], areas[b]);
+            return compare < 0 || (compare == 0 && a < b);
+        }
+
+        private void move(int point, int position) {
+            heap[position] = point;
+            positions[point] = position;
+        }
+    }
+}
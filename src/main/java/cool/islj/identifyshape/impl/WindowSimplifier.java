@@ -0,0 +1,56 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.Config;
+import cool.islj.identifyshape.entry.PointBuffer;
+
+/**
+ * 分组平滑：每Config.SMOOTH_INTERVAL_COUNT个点一组，
+ * 组内各点到头尾连线的垂直距离都不超过阈值时只保留组的第一个点，下一组从本组倒数第二个点开始；
+ * 出现超过阈值的点时，从此点开始重新分组
+ */
+final class WindowSimplifier implements Simplifier {
+
+    @Override
+    public int[] simplify(PointBuffer originPoints, double threshold) {
+        IntList result = new IntList();
+        int size = originPoints.size();
+
+        // 分组，每组进行平滑处理
+        double[] distances = new double[Config.SMOOTH_INTERVAL_COUNT];
+        int begin = 0, end;
+        while ((end = begin + Config.SMOOTH_INTERVAL_COUNT) < size) {
+            // 将每组第一个点加入结果中
+            result.add(begin);
+            double beginX = originPoints.x(begin);
+            double beginY = originPoints.y(begin);
+
+            // 计算每组头尾矢量的模长
+            double dxSum = originPoints.x(end) - beginX;
+            double dySum = originPoints.y(end) - beginY;
+            double totalLength = GeometryKernels.length(dxSum, dySum);
+
+            // 判断起点到组内各点在头尾矢量方向上的垂直距离是否小于阈值
+            // 如果出现垂直距离大于阈值的点，将此点加入结果集，舍弃其他点，并将此点作为下一分组的起点，重新分组
+            int count = end - 1 - begin;
+            GeometryKernels.perpendicularDistances(originPoints.xs(), originPoints.ys(), begin + 1, count,
+                    beginX, beginY, dxSum, dySum, totalLength, distances);
+            boolean flag = false;
+            for (int k = 0; k < count; k++) {
+                if (distances[k] > threshold) {
+                    begin = begin + 1 + k;
+                    flag = true;
+                    break;
+                }
+            }
+            if (flag) {
+                continue;
+            }
+            begin = end - 1;
+        }
+        // 如果最后不满一组，直接把最后一个点加入其中
+        if (begin < size) {
+            result.add(size - 1);
+        }
+        return result.toArray();
+    }
+}
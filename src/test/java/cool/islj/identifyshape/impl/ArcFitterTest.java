@@ -0,0 +1,157 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 圆弧拟合的结果与原曲线的偏差不超过容差：原曲线上的每一处到结果的距离、结果上的每一处到原曲线的距离都不超过容差，
+ * 首尾点与原曲线相同。偏差在每条边上取若干点计算，不只看顶点
+ */
+class ArcFitterTest {
+
+    private static final double X0 = 12_000_000;
+
+    private static final double Y0 = -5_600_000;
+
+    private static final double TOLERANCE = 2;
+
+    /**
+     * 每条边上取点的段数
+     */
+    private static final int EDGE_SAMPLES = 16;
+
+    @Test
+    void arcsStayWithinTolerance() {
+        Random random = new Random(17);
+        for (int n = 0; n < 50; n++) {
+            double radius = 20 + random.nextDouble() * 2000;
+            double sweep = (random.nextBoolean() ? 1 : -1) * (0.2 + random.nextDouble() * 5);
+            PointBuffer points = new PointBuffer();
+            int count = 10 + random.nextInt(200);
+            for (int i = 0; i <= count; i++) {
+                double angle = sweep * i / count;
+                double r = radius + random.nextGaussian() * TOLERANCE / 10;
+                points.add(X0 + r * Math.cos(angle), Y0 + r * Math.sin(angle));
+            }
+            assertFitted(points, "半径" + radius + "，转角" + sweep);
+        }
+    }
+
+    @Test
+    void closedCirclesStayWithinTolerance() {
+        for (double radius : new double[]{5, 50, 500, 5000}) {
+            for (int count : new int[]{8, 33, 400}) {
+                PointBuffer points = new PointBuffer();
+                for (int i = 0; i <= count; i++) {
+                    double angle = 2 * Math.PI * i / count;
+                    points.add(X0 + radius * Math.cos(angle), Y0 + radius * Math.sin(angle));
+                }
+                assertFitted(points, "半径" + radius + "，" + count + "段");
+            }
+        }
+    }
+
+    @Test
+    void hairpinsAndOvershootsStayWithinTolerance() {
+        // 沿直线走出去再原路折回
+        PointBuffer hairpin = new PointBuffer();
+        for (int i = 0; i <= 40; i++) {
+            hairpin.add(X0 + (i <= 20 ? i : 40 - i) * 10, Y0 + (i <= 20 ? 0 : 0.5));
+        }
+        assertFitted(hairpin, "发夹");
+        // 超过终点后折回终点
+        PointBuffer overshoot = new PointBuffer();
+        for (int i = 0; i <= 30; i++) {
+            overshoot.add(X0 + (i <= 25 ? i : 50 - i) * 10, Y0);
+        }
+        assertFitted(overshoot, "冲过头");
+        // 起点之前有折返
+        PointBuffer backtrack = new PointBuffer();
+        for (int i = -5; i <= 25; i++) {
+            backtrack.add(X0 + Math.abs(i) * 10, Y0 + i * 0.01);
+        }
+        assertFitted(backtrack, "起点折返");
+        // 窄的U形：半圆两端接直线，折回后与来路只相距几个容差
+        PointBuffer u = new PointBuffer();
+        for (int i = 0; i <= 20; i++) {
+            u.add(X0 + i * 10, Y0);
+        }
+        for (int i = 1; i < 12; i++) {
+            double angle = -Math.PI / 2 + Math.PI * i / 12;
+            u.add(X0 + 200 + 3 * Math.cos(angle), Y0 + 3 + 3 * Math.sin(angle));
+        }
+        for (int i = 20; i >= 0; i--) {
+            u.add(X0 + i * 10, Y0 + 6);
+        }
+        assertFitted(u, "U形");
+    }
+
+    @Test
+    void randomWalksStayWithinTolerance() {
+        Random random = new Random(3);
+        for (int n = 0; n < 50; n++) {
+            PointBuffer points = new PointBuffer();
+            double x = X0, y = Y0, heading = 0;
+            for (int i = random.nextInt(100) + 2; i >= 0; i--) {
+                points.add(x, y);
+                heading += random.nextGaussian() * (random.nextInt(10) == 0 ? 3 : 0.2);
+                double step = random.nextInt(20) == 0 ? 0 : random.nextDouble() * 10;
+                x += step * Math.cos(heading);
+                y += step * Math.sin(heading);
+            }
+            assertFitted(points, "随机曲线" + n);
+        }
+    }
+
+    private static void assertFitted(PointBuffer points, String message) {
+        List<Point> fitted = CurveFitter.ARCS.fit(points, 0, points.size() - 1, TOLERANCE);
+        List<Point> original = points.toPoints(0, points.size());
+        Assertions.assertEquals(original.getFirst().getX(), fitted.getFirst().getX(), message);
+        Assertions.assertEquals(original.getFirst().getY(), fitted.getFirst().getY(), message);
+        Assertions.assertEquals(original.getLast().getX(), fitted.getLast().getX(), message);
+        Assertions.assertEquals(original.getLast().getY(), fitted.getLast().getY(), message);
+        double limit = TOLERANCE * (1 + 1e-9);
+        Assertions.assertTrue(maxDeviation(original, fitted) <= limit, message + "：原曲线到结果的偏差" + maxDeviation(original, fitted));
+        Assertions.assertTrue(maxDeviation(fitted, original) <= limit, message + "：结果到原曲线的偏差" + maxDeviation(fitted, original));
+    }
+
+    /**
+     * @return from的各条边上的点到折线to的最大距离
+     */
+    private static double maxDeviation(List<Point> from, List<Point> to) {
+        List<double[]> samples = new ArrayList<>();
+        samples.add(new double[]{from.getFirst().getX() - X0, from.getFirst().getY() - Y0});
+        for (int i = 1; i < from.size(); i++) {
+            Point a = from.get(i - 1), b = from.get(i);
+            for (int k = 1; k <= EDGE_SAMPLES; k++) {
+                double t = (double) k / EDGE_SAMPLES;
+                samples.add(new double[]{a.getX() - X0 + (b.getX() - a.getX()) * t, a.getY() - Y0 + (b.getY() - a.getY()) * t});
+            }
+        }
+        double max = 0;
+        for (double[] sample : samples) {
+            double min = Double.MAX_VALUE;
+            for (int i = 1; i < to.size(); i++) {
+                min = Math.min(min, distanceToEdge(sample[0], sample[1], to.get(i - 1), to.get(i)));
+            }
+            if (to.size() == 1) {
+                min = Math.hypot(sample[0] - (to.getFirst().getX() - X0), sample[1] - (to.getFirst().getY() - Y0));
+            }
+            max = Math.max(max, min);
+        }
+        return max;
+    }
+
+    private static double distanceToEdge(double x, double y, Point a, Point b) {
+        double x1 = a.getX() - X0, y1 = a.getY() - Y0, dx = b.getX() - a.getX(), dy = b.getY() - a.getY();
+        double lengthSquare = dx * dx + dy * dy;
+        double t = lengthSquare == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquare));
+        return Math.hypot(x - x1 - dx * t, y - y1 - dy * t);
+    }
+}
@@ -0,0 +1,205 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 批量识别：结果按输入顺序返回，读取输入不超前maxInFlight幅，识别失败时抛出原异常，关闭结果流时中断正在识别的草图；
+ * 多个线程共用同一个IdentifyImpl时结果与逐幅识别相同
+ */
+class BatchRecognizerTest {
+
+    private final List<Sketch> sketches = corpus();
+
+    @Test
+    void resultsFollowInputOrder() {
+        // 每幅草图随机停顿，完成的顺序与输入顺序不同
+        IdentifyImpl identify = new IdentifyImpl(new RecognitionListener() {
+            @Override
+            public void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+                if (stage == Stage.PRUNE) {
+                    pause(ThreadLocalRandom.current().nextInt(20));
+                }
+            }
+        });
+        try (BatchRecognizer batch = new BatchRecognizer(identify, 4)) {
+            assertSameAsSequential(batch.recognizeAll(sketches));
+        }
+    }
+
+    @Test
+    void readsAtMostMaxInFlightAhead() {
+        int maxInFlight = 3;
+        CountingIterator source = new CountingIterator(sketches.iterator());
+        try (BatchRecognizer batch = new BatchRecognizer(new IdentifyImpl(), maxInFlight);
+             Stream<RecognitionResult> stream = batch.recognize(source)) {
+            Assertions.assertEquals(0, source.reads.get(), "流被消费之前不应读取输入");
+            Iterator<RecognitionResult> results = stream.iterator();
+            int taken = 0;
+            while (results.hasNext()) {
+                Assertions.assertTrue(source.reads.get() <= taken + maxInFlight, "已取走" + taken + "幅，读取了" + source.reads.get() + "幅");
+                results.next();
+                taken++;
+            }
+            Assertions.assertEquals(sketches.size(), taken);
+            Assertions.assertEquals(sketches.size(), source.reads.get());
+        }
+    }
+
+    @Test
+    void failurePropagatesOriginalException() {
+        // 只有一笔的草图识别失败
+        Sketch failing = new Sketch(List.of(sketches.getFirst().getStrokes().getFirst()), sketches.getFirst().getPixelDistance());
+        IdentifyImpl identify = new IdentifyImpl(new RecognitionListener() {
+            @Override
+            public void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+                if (stage == Stage.PRUNE && inputCount == 1) {
+                    throw new IllegalStateException("识别失败");
+                }
+            }
+        });
+        List<Sketch> input = new ArrayList<>(sketches);
+        input.add(input.size() / 2, failing);
+        try (BatchRecognizer batch = new BatchRecognizer(identify, 2)) {
+            IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> batch.recognizeAll(input));
+            Assertions.assertEquals("识别失败", e.getMessage());
+            // 失败后同一个实例仍可使用
+            assertSameAsSequential(batch.recognizeAll(sketches));
+        }
+    }
+
+    @Test
+    void closingStreamInterruptsRunningRecognitions() throws InterruptedException {
+        int maxInFlight = 3;
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(maxInFlight);
+        CountDownLatch interrupted = new CountDownLatch(maxInFlight - 1);
+        // 第一幅草图正常识别，其余的在预筛选处等待，直到被中断
+        IdentifyImpl identify = new IdentifyImpl(new RecognitionListener() {
+            @Override
+            public void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+                if (stage == Stage.PRUNE) {
+                    started.countDown();
+                    if (calls.getAndIncrement() == 0) {
+                        return;
+                    }
+                    try {
+                        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        CountingIterator source = new CountingIterator(sketches.iterator());
+        try (BatchRecognizer batch = new BatchRecognizer(identify, maxInFlight)) {
+            try (Stream<RecognitionResult> stream = batch.recognize(source)) {
+                Assertions.assertTrue(stream.iterator().next().isComplete());
+                Assertions.assertTrue(started.await(10, TimeUnit.SECONDS), "识别任务没有开始");
+            }
+            Assertions.assertTrue(interrupted.await(10, TimeUnit.SECONDS), "关闭结果流后仍有识别任务未被中断");
+            Assertions.assertEquals(maxInFlight, source.reads.get());
+        }
+    }
+
+    @Test
+    void concurrentBatchesMatchSequential() throws Exception {
+        IdentifyImpl identify = new IdentifyImpl();
+        try (BatchRecognizer batch = new BatchRecognizer(identify, 8);
+             ExecutorService callers = Executors.newFixedThreadPool(4)) {
+            List<Future<List<RecognitionResult>>> futures = new ArrayList<>();
+            for (int n = 0; n < 8; n++) {
+                futures.add(callers.submit(() -> batch.recognizeAll(sketches)));
+            }
+            for (Future<List<RecognitionResult>> future : futures) {
+                assertSameAsSequential(future.get());
+            }
+        }
+    }
+
+    private void assertSameAsSequential(List<RecognitionResult> results) {
+        IdentifyImpl identify = new IdentifyImpl();
+        Assertions.assertEquals(sketches.size(), results.size());
+        for (int n = 0; n < sketches.size(); n++) {
+            RecognitionResult expected = identify.recognize(sketches.get(n));
+            Assertions.assertTrue(results.get(n).isComplete(), "第" + n + "幅");
+            Assertions.assertEquals(describe(expected.getSegments()), describe(results.get(n).getSegments()), "第" + n + "幅");
+            Assertions.assertEquals(RegressionTest.canonical(expected), RegressionTest.canonical(results.get(n)), "第" + n + "幅");
+        }
+    }
+
+    /**
+     * 样例中的草图各取两次，都不止一笔
+     */
+    private static List<Sketch> corpus() {
+        List<Sketch> sketches = new ArrayList<>();
+        for (String name : List.of("arrows", "arrowheads", "flag")) {
+            sketches.addAll(TestSketches.load(name));
+        }
+        sketches.addAll(new ArrayList<>(sketches));
+        sketches.forEach(sketch -> Assertions.assertTrue(sketch.getStrokes().size() > 1));
+        return sketches;
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<String> describe(List<Segment> segments) {
+        List<String> texts = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            StringBuilder builder = new StringBuilder();
+            for (Point point : segment.getAllPoints()) {
+                builder.append(point.getX()).append(',').append(point.getY()).append(' ');
+            }
+            texts.add(builder.toString());
+        }
+        return texts;
+    }
+
+    /**
+     * 记录读取次数的输入
+     */
+    private static final class CountingIterator implements Iterator<Sketch> {
+
+        private final Iterator<Sketch> sketches;
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        CountingIterator(Iterator<Sketch> sketches) {
+            this.sketches = sketches;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return sketches.hasNext();
+        }
+
+        @Override
+        public Sketch next() {
+            reads.incrementAndGet();
+            return sketches.next();
+        }
+    }
+}
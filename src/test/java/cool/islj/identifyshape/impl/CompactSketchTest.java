@@ -0,0 +1,131 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.CompactSketch;
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 紧凑存储的草图：以局部原点识别的结果与按绝对坐标识别相同，范围过大、float误差超过容差1%的草图被拒绝
+ */
+class CompactSketchTest {
+
+    private final IdentifyImpl identifyService = new IdentifyImpl();
+
+    @Test
+    void localFrameMatchesAbsoluteFrame() {
+        List<Sketch> sketches = new ArrayList<>();
+        for (String name : List.of("arrows", "arrowheads", "flag")) {
+            sketches.addAll(TestSketches.load(name));
+        }
+        // 笔画之间大量相交、相接，打断位置紧贴原来的端点时两种坐标的舍入不同
+        Random random = new Random(21);
+        for (int n = 0; n < 20; n++) {
+            sketches.add(randomSketch(random));
+        }
+        for (int n = 0; n < sketches.size(); n++) {
+            CompactSketch compact = CompactSketch.of(sketches.get(n));
+            // 与紧凑存储相同的点（已按float舍入），只是坐标原点不同
+            RecognitionResult expected = identifyService.recognize(absoluteSketch(compact));
+            RecognitionResult actual = identifyService.recognize(compact);
+            String message = "第" + n + "幅";
+            Assertions.assertEquals(describe(expected.getSegments()), describe(actual.getSegments()), message);
+            Assertions.assertEquals(RegressionTest.canonical(expected), RegressionTest.canonical(actual), message);
+        }
+    }
+
+    @Test
+    void floatErrorIsBoundedByTolerance() {
+        // pixelDistance为1时容差为5，float误差不能超过0.05：范围小于2^20时误差不超过2^-5
+        Sketch accepted = line(1_000_000, 1);
+        CompactSketch compact = CompactSketch.of(accepted);
+        PointBuffer original = accepted.getStrokes().getFirst();
+        PointBuffer local = compact.localStroke(0);
+        for (int i = 0; i < original.size(); i++) {
+            Assertions.assertTrue(Math.abs(compact.getOriginX() + local.x(i) - original.x(i)) <= 0.05);
+            Assertions.assertTrue(Math.abs(compact.getOriginY() + local.y(i) - original.y(i)) <= 0.05);
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CompactSketch.of(line(1_100_000, 1)));
+        // 容差随pixelDistance放大
+        CompactSketch.of(line(1_100_000, 10));
+        // 没有点的草图
+        Assertions.assertEquals(0, CompactSketch.of(new Sketch(new ArrayList<>(), 1)).pointCount());
+    }
+
+    /**
+     * 按紧凑存储的点还原为绝对坐标的草图
+     */
+    private static Sketch absoluteSketch(CompactSketch compact) {
+        List<PointBuffer> strokes = new ArrayList<>(compact.strokeCount());
+        for (int n = 0; n < compact.strokeCount(); n++) {
+            PointBuffer local = compact.localStroke(n);
+            PointBuffer stroke = new PointBuffer(local.size());
+            for (int i = 0; i < local.size(); i++) {
+                stroke.add(compact.getOriginX() + local.x(i), compact.getOriginY() + local.y(i));
+            }
+            strokes.add(stroke);
+        }
+        return new Sketch(strokes, compact.getPixelDistance());
+    }
+
+    /**
+     * 折线方框、圆弧和V形混合的草图，每笔约100个点、间隔约10
+     */
+    private static Sketch randomSketch(Random random) {
+        List<PointBuffer> strokes = new ArrayList<>();
+        int strokeCount = 30, pointCount = 100;
+        double extent = 1000 * Math.sqrt(strokeCount);
+        for (int s = 0; s < strokeCount; s++) {
+            PointBuffer stroke = new PointBuffer();
+            double x = 12_000_000 + random.nextDouble() * extent, y = 5_600_000 + random.nextDouble() * extent;
+            double angle = random.nextDouble() * Math.PI * 2;
+            int kind = random.nextInt(3);
+            for (int i = 0; i < pointCount; i++) {
+                if (kind == 0 && i % (pointCount / 4 + 1) == 0) {
+                    angle += Math.PI / 2;
+                } else if (kind == 1) {
+                    angle += Math.PI * 2 / pointCount;
+                } else if (kind == 2 && i == pointCount / 2) {
+                    angle += 2.5;
+                }
+                x += Math.cos(angle) * 10 + random.nextGaussian();
+                y += Math.sin(angle) * 10 + random.nextGaussian();
+                stroke.add(x, y);
+            }
+            strokes.add(stroke);
+        }
+        return new Sketch(strokes, 1);
+    }
+
+    private static Sketch line(double length, double pixelDistance) {
+        PointBuffer stroke = new PointBuffer();
+        for (int i = 0; i <= 100; i++) {
+            stroke.add(12_000_000.123456789 + length * i / 100, 5_600_000.987654321 + i * 0.337);
+        }
+        return new Sketch(List.of(stroke), pixelDistance);
+    }
+
+    /**
+     * 保留3位小数，两种坐标下计算的交点只在舍入误差内不同
+     */
+    private static List<String> describe(List<Segment> segments) {
+        List<String> texts = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            StringBuilder builder = new StringBuilder();
+            for (Point point : segment.getAllPoints()) {
+                builder.append(String.format(Locale.ROOT, "%.3f,%.3f ", point.getX(), point.getY()));
+            }
+            texts.add(builder.toString());
+        }
+        return texts;
+    }
+}
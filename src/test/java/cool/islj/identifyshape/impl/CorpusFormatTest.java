@@ -0,0 +1,143 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 二进制语料文件：写入后读出的坐标逐位相同，可以按序号直接读取，损坏的文件在打开时被拒绝
+ */
+class CorpusFormatTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void roundTripIsBitExact() throws IOException {
+        List<Sketch> sketches = randomSketches(new Random(9), 30);
+        // 没有笔画的草图和没有点的笔画
+        sketches.add(5, new Sketch(new ArrayList<>(), 3.5));
+        sketches.get(7).getStrokes().add(1, new PointBuffer());
+        Path file = tempDir.resolve("corpus.bin");
+        try (CorpusWriter writer = new CorpusWriter(file)) {
+            for (Sketch sketch : sketches) {
+                writer.write(sketch);
+            }
+        }
+
+        try (CorpusReader reader = new CorpusReader(file)) {
+            Assertions.assertEquals(sketches.size(), reader.size());
+            // 倒序读取，每幅都直接定位
+            for (int n = sketches.size() - 1; n >= 0; n--) {
+                assertSameSketch(sketches.get(n), reader.get(n), "第" + n + "幅");
+                Assertions.assertEquals(sketches.get(n).getStrokes().stream().mapToLong(PointBuffer::size).sum(), reader.pointCount(n));
+            }
+            int n = 0;
+            for (Sketch sketch : reader) {
+                assertSameSketch(sketches.get(n), sketch, "顺序读取第" + n + "幅");
+                n++;
+            }
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> reader.get(sketches.size()));
+        }
+    }
+
+    @Test
+    void rejectedSketchLeavesFileIntact() throws IOException {
+        Path file = tempDir.resolve("corpus.bin");
+        Sketch valid = randomSketches(new Random(1), 1).getFirst();
+        PointBuffer bad = new PointBuffer();
+        bad.add(1, 2);
+        bad.add(Double.NaN, 2);
+        try (CorpusWriter writer = new CorpusWriter(file)) {
+            writer.write(valid);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> writer.write(new Sketch(List.of(bad), 1)));
+            writer.write(valid);
+        }
+        try (CorpusReader reader = new CorpusReader(file)) {
+            Assertions.assertEquals(2, reader.size());
+            assertSameSketch(valid, reader.get(1), "拒绝之后写入的草图");
+        }
+    }
+
+    @Test
+    void corruptFileIsRejected() throws IOException {
+        Path file = tempDir.resolve("corpus.bin");
+        try (CorpusWriter writer = new CorpusWriter(file)) {
+            for (Sketch sketch : randomSketches(new Random(2), 3)) {
+                writer.write(sketch);
+            }
+        }
+        byte[] bytes = Files.readAllBytes(file);
+
+        // 截断
+        for (int length : new int[]{0, 10, bytes.length / 2, bytes.length - 1}) {
+            Path truncated = tempDir.resolve("truncated" + length + ".bin");
+            Files.write(truncated, Arrays.copyOf(bytes, length));
+            Assertions.assertThrows(IOException.class, () -> new CorpusReader(truncated), "截断为" + length + "字节");
+        }
+        // 尾部的索引偏移量指向文件之外
+        byte[] badTail = bytes.clone();
+        badTail[badTail.length - 5] = 0x7F;
+        Path tail = tempDir.resolve("tail.bin");
+        Files.write(tail, badTail);
+        Assertions.assertThrows(IOException.class, () -> new CorpusReader(tail));
+        // 草图数量与索引长度不符
+        byte[] badCount = bytes.clone();
+        int indexOffset = (int) readLong(bytes, bytes.length - 8);
+        badCount[indexOffset] = 0x40;
+        Path count = tempDir.resolve("count.bin");
+        Files.write(count, badCount);
+        Assertions.assertThrows(IOException.class, () -> new CorpusReader(count));
+    }
+
+    private static List<Sketch> randomSketches(Random random, int size) {
+        List<Sketch> sketches = new ArrayList<>();
+        for (int n = 0; n < size; n++) {
+            List<PointBuffer> strokes = new ArrayList<>();
+            for (int s = random.nextInt(6); s >= 0; s--) {
+                PointBuffer stroke = new PointBuffer();
+                double x = 1.2e7 + random.nextDouble() * 1e5, y = -5.6e6 + random.nextDouble() * 1e5;
+                for (int i = random.nextInt(60); i >= 0; i--) {
+                    stroke.add(x, y);
+                    x += random.nextGaussian() * 100;
+                    // 一部分点落在定点精度的整数倍上
+                    y = random.nextBoolean() ? y + random.nextGaussian() * 100 : Math.rint(y + 7);
+                }
+                strokes.add(stroke);
+            }
+            sketches.add(new Sketch(strokes, random.nextDouble() * 10_000));
+        }
+        return sketches;
+    }
+
+    private static void assertSameSketch(Sketch expected, Sketch actual, String message) {
+        Assertions.assertEquals(Double.doubleToRawLongBits(expected.getPixelDistance()), Double.doubleToRawLongBits(actual.getPixelDistance()), message);
+        Assertions.assertEquals(expected.getStrokes().size(), actual.getStrokes().size(), message);
+        for (int s = 0; s < expected.getStrokes().size(); s++) {
+            PointBuffer a = expected.getStrokes().get(s), b = actual.getStrokes().get(s);
+            Assertions.assertEquals(a.size(), b.size(), message);
+            for (int i = 0; i < a.size(); i++) {
+                Assertions.assertEquals(Double.doubleToRawLongBits(a.x(i)), Double.doubleToRawLongBits(b.x(i)), message);
+                Assertions.assertEquals(Double.doubleToRawLongBits(a.y(i)), Double.doubleToRawLongBits(b.y(i)), message);
+            }
+        }
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
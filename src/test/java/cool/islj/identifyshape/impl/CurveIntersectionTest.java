@@ -0,0 +1,206 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointView;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.entry.Shape;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 一次切成多段的求交打断与逐次二分打断（每次在第一个交点处切成两段，再对两段递归）的结果一致，
+ * 包括切出的线段的顺序。网格上的交点都能精确表示，两种做法不会因舍入不同而产生差异
+ */
+class CurveIntersectionTest {
+
+    private static final double SNAP_DISTANCE = 0.0001;
+
+    private static final double X0 = 12_000_000;
+
+    private static final double Y0 = 5_600_000;
+
+    private final IdentifyImpl identifyService = new IdentifyImpl();
+
+    @Test
+    void multiSplitMatchesRecursiveSplitOnGrid() {
+        for (int size : new int[]{2, 5, 12}) {
+            List<Segment> expected = recursiveSplit(gridSegments(size));
+            List<Segment> actual = identifyService.curveIntersection(gridSegments(size));
+            Assertions.assertEquals(describe(expected), describe(actual), "网格" + size);
+            Assertions.assertTrue(actual.size() > 2 * size * size, "网格" + size + "应被切成多段");
+        }
+    }
+
+    /**
+     * size条横线、size条竖线和两条阶梯形的曲线，都已按整幅图延长
+     */
+    private List<Segment> gridSegments(int size) {
+        List<Segment> segments = new ArrayList<>();
+        double extent = size * 10;
+        for (int n = 0; n < size; n++) {
+            double offset = n * 10 + 5;
+            segments.add(segment(Shape.STRAIGHT, X0, Y0 + offset, X0 + extent, Y0 + offset));
+            segments.add(segment(Shape.STRAIGHT, X0 + offset, Y0 + extent, X0 + offset, Y0));
+        }
+        segments.add(staircase(X0 + 1, Y0 + 2, size * 2, 1));
+        segments.add(staircase(X0 + extent - 1, Y0 + 3, size * 2, -1));
+        for (Segment segment : segments) {
+            identifyService.extendSegment(segment, extent / 10);
+        }
+        return segments;
+    }
+
+    private static Segment segment(Shape shape, double... coordinates) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < coordinates.length; i += 2) {
+            points.add(new Point(coordinates[i], coordinates[i + 1]));
+        }
+        PointView view = PointView.view(points, 0, points.size());
+        return new Segment(view.getFirst(), view.getLast(), null, null, view, shape);
+    }
+
+    /**
+     * 水平、竖直交替的阶梯，每级宽5高5，direction为水平方向
+     */
+    private static Segment staircase(double x, double y, int steps, int direction) {
+        double[] coordinates = new double[(steps * 2 + 1) * 2];
+        coordinates[0] = x;
+        coordinates[1] = y;
+        for (int n = 1; n <= steps * 2; n++) {
+            x += n % 2 == 1 ? 5 * direction : 0;
+            y += n % 2 == 0 ? 5 : 0;
+            coordinates[2 * n] = x;
+            coordinates[2 * n + 1] = y;
+        }
+        return segment(Shape.CURVE, coordinates);
+    }
+
+    private static List<String> describe(List<Segment> segments) {
+        List<String> texts = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            StringBuilder builder = new StringBuilder();
+            builder.append(segment.getBeginPoint().getX()).append(',').append(segment.getBeginPoint().getY()).append(" -> ")
+                    .append(segment.getEndPoint().getX()).append(',').append(segment.getEndPoint().getY()).append(':');
+            for (Point point : segment.getAllPoints()) {
+                builder.append(' ').append(point.getX()).append(',').append(point.getY());
+            }
+            texts.add(builder.toString());
+        }
+        return texts;
+    }
+
+    // 以下为逐次二分打断的参考实现
+
+    private static List<Segment> recursiveSplit(List<Segment> segments) {
+        SubSegmentIndex index = new SubSegmentIndex(segments);
+        List<Segment> result = new ArrayList<>();
+        for (Segment targetSegment : segments) {
+            result.addAll(interrupt(new ArrayList<>(List.of(targetSegment)), segments, index));
+        }
+        return result;
+    }
+
+    private static List<Segment> interrupt(List<Segment> targetSegments, List<Segment> interruptSegments, SubSegmentIndex index) {
+        List<Segment> result = new ArrayList<>();
+        List<Segment> tempSegments = new ArrayList<>();
+        Iterator<Segment> iterator = targetSegments.iterator();
+        while (iterator.hasNext()) {
+            Segment targetSegment = iterator.next();
+            List<Segment> interrupted = interruptOnce(targetSegment, interruptSegments, index);
+            if (interrupted.size() > 1) {
+                result.remove(targetSegment);
+                tempSegments.addAll(interrupted);
+                iterator.remove();
+            } else if (!result.contains(targetSegment)) {
+                result.add(targetSegment);
+            }
+        }
+        if (!tempSegments.isEmpty()) {
+            result.addAll(interrupt(tempSegments, interruptSegments, index));
+        }
+        result.removeIf(segment -> {
+            List<Point> points = segment.getAllPoints();
+            return points.size() <= 2 &&
+                    Math.abs(points.getFirst().getX() - points.getLast().getX()) <= SNAP_DISTANCE &&
+                    Math.abs(points.getFirst().getY() - points.getLast().getY()) <= SNAP_DISTANCE;
+        });
+        result.removeIf(IdentifyImpl::isOutsideOldEnds);
+        return result;
+    }
+
+    /**
+     * 在(打断线段下标, targetSegment子线段下标, 打断线段子线段下标)最小的交点处切成两段，先后段再前段
+     */
+    private static List<Segment> interruptOnce(Segment targetSegment, List<Segment> interruptSegments, SubSegmentIndex index) {
+        PointView curve1 = PointView.of(targetSegment.getAllPoints());
+        IntList items = new IntList();
+        int bestK = Integer.MAX_VALUE, bestI = 0, bestJ = 0;
+        Point best = null;
+        for (int i = 0; i < curve1.size() - 1; i++) {
+            Point p1 = curve1.get(i), p2 = curve1.get(i + 1);
+            index.query(p1, p2, items);
+            for (int n = 0; n < items.size(); n++) {
+                int k = index.segmentOf(items.get(n)), j = index.startOf(items.get(n));
+                if (k > bestK || (k == bestK && (i > bestI || (i == bestI && j > bestJ)))) {
+                    continue;
+                }
+                Segment interruptSegment = interruptSegments.get(k);
+                Point p3 = interruptSegment.getAllPoints().get(j), p4 = interruptSegment.getAllPoints().get(j + 1);
+                Point intersection = splitPoint(p1, p2, p3, p4);
+                if (intersection != null && !samePoint(intersection, targetSegment.getBeginPoint()) &&
+                        !samePoint(intersection, targetSegment.getEndPoint()) &&
+                        !(isSameOrigin(targetSegment, interruptSegment) && isSharedVertex(intersection, p1, p2, p3, p4))) {
+                    bestK = k;
+                    bestI = i;
+                    bestJ = j;
+                    best = intersection;
+                }
+            }
+        }
+        if (best == null) {
+            return new ArrayList<>(List.of(targetSegment));
+        }
+        PointView points1 = curve1.subView(0, bestI + 1);
+        PointView points2 = curve1.subView(bestI + 1, curve1.size());
+        Segment first = new Segment(targetSegment.getBeginPoint(), best, targetSegment.getOldBeginPoint(), targetSegment.getOldEndPoint(),
+                points1.getLast() != best ? points1.withTail(best) : points1, null);
+        Segment second = new Segment(best, targetSegment.getEndPoint(), targetSegment.getOldBeginPoint(), targetSegment.getOldEndPoint(),
+                points2.getFirst() != best ? points2.withHead(best) : points2, null);
+        return new ArrayList<>(List.of(second, first));
+    }
+
+    private static Point splitPoint(Point p1, Point p2, Point p3, Point p4) {
+        Point intersection = GeometryPredicates.intersection(p1, p2, p3, p4);
+        if (intersection == null || intersection == p1 || intersection == p2) {
+            return intersection;
+        }
+        if (GeometryPredicates.distanceToLine(p1, p3, p4) <= SNAP_DISTANCE &&
+                GeometryPredicates.distanceToLine(p2, p3, p4) <= SNAP_DISTANCE) {
+            return null;
+        }
+        if (GeometryKernels.length(intersection.getX() - p1.getX(), intersection.getY() - p1.getY()) <= SNAP_DISTANCE) {
+            return p1;
+        }
+        if (GeometryKernels.length(intersection.getX() - p2.getX(), intersection.getY() - p2.getY()) <= SNAP_DISTANCE) {
+            return p2;
+        }
+        return intersection;
+    }
+
+    private static boolean samePoint(Point a, Point b) {
+        return a.getX() == b.getX() && a.getY() == b.getY();
+    }
+
+    private static boolean isSameOrigin(Segment a, Segment b) {
+        return a.getOldBeginPoint() != null && a.getOldBeginPoint() == b.getOldBeginPoint() &&
+                a.getOldEndPoint() == b.getOldEndPoint();
+    }
+
+    private static boolean isSharedVertex(Point point, Point p1, Point p2, Point p3, Point p4) {
+        return (samePoint(point, p1) || samePoint(point, p2)) && (samePoint(point, p3) || samePoint(point, p4));
+    }
+}
@@ -0,0 +1,102 @@
+package cool.islj.identifyshape.impl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Vector API实现与标量实现逐位一致：点数不是向量长度的整数倍（包括只有尾部的情况），以及相邻点重合、方向向量长度为0
+ */
+class GeometryKernelsTest {
+
+    /**
+     * 未写入的位置保持此值
+     */
+    private static final double UNWRITTEN = -7;
+
+    private final GeometryKernels.ScalarBackend scalar = new GeometryKernels.ScalarBackend();
+
+    private GeometryKernels.Backend vector;
+
+    @BeforeEach
+    void loadVectorBackend() {
+        Assumptions.assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(), "未加载jdk.incubator.vector模块");
+        vector = new VectorGeometryBackend();
+    }
+
+    @Test
+    void turnCosinesMatchScalar() {
+        Random random = new Random(12);
+        for (int n = 0; n < 2000; n++) {
+            int size = random.nextInt(40);
+            double[][] stroke = randomStroke(random, size);
+            for (int step = 1; step <= 2; step++) {
+                double[] expected = unwritten(size);
+                double[] actual = unwritten(size);
+                scalar.turnCosines(stroke[0], stroke[1], size, step, expected);
+                vector.turnCosines(stroke[0], stroke[1], size, step, actual);
+                String message = size + "个点，step=" + step;
+                assertBitwiseEquals(expected, actual, message);
+                for (int i = 0; i < size; i++) {
+                    Assertions.assertEquals(GeometryKernels.angleLessThan(expected[i], GeometryKernels.COS_150),
+                            GeometryKernels.angleLessThan(actual[i], GeometryKernels.COS_150), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void perpendicularDistancesMatchScalar() {
+        Random random = new Random(34);
+        for (int n = 0; n < 2000; n++) {
+            int size = 1 + random.nextInt(40);
+            double[][] stroke = randomStroke(random, size);
+            int from = random.nextInt(size);
+            int count = random.nextInt(size - from + 1);
+            int end = Math.min(size - 1, from + count);
+            double originX = stroke[0][from], originY = stroke[1][from];
+            double directionX = stroke[0][end] - originX, directionY = stroke[1][end] - originY;
+            double directionLength = GeometryKernels.length(directionX, directionY);
+            double[] expected = unwritten(count);
+            double[] actual = unwritten(count);
+            scalar.perpendicularDistances(stroke[0], stroke[1], from, count, originX, originY, directionX, directionY, directionLength, expected);
+            vector.perpendicularDistances(stroke[0], stroke[1], from, count, originX, originY, directionX, directionY, directionLength, actual);
+            assertBitwiseEquals(expected, actual, "from=" + from + "，count=" + count);
+        }
+    }
+
+    /**
+     * 坐标为1e7量级的随机折线，约1/5的步长为0
+     */
+    private static double[][] randomStroke(Random random, int size) {
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        double x = 12_000_000 + random.nextDouble(), y = 5_600_000 + random.nextDouble();
+        for (int i = 0; i < size; i++) {
+            if (random.nextInt(5) != 0) {
+                x += random.nextGaussian() * 10;
+                y += random.nextGaussian() * 10;
+            }
+            xs[i] = x;
+            ys[i] = y;
+        }
+        return new double[][]{xs, ys};
+    }
+
+    private static double[] unwritten(int size) {
+        double[] result = new double[size];
+        Arrays.fill(result, UNWRITTEN);
+        return result;
+    }
+
+    private static void assertBitwiseEquals(double[] expected, double[] actual, String message) {
+        for (int i = 0; i < expected.length; i++) {
+            Assertions.assertEquals(Double.doubleToRawLongBits(expected[i]), Double.doubleToRawLongBits(actual[i]),
+                    message + "，第" + i + "个：" + expected[i] + " / " + actual[i]);
+        }
+    }
+}
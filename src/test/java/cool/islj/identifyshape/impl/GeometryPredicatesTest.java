@@ -0,0 +1,109 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+/**
+ * 方向判定与线段求交，坐标取实际数据的1e7量级
+ */
+class GeometryPredicatesTest {
+
+    private static final double X0 = 12_000_000.123;
+
+    private static final double Y0 = 5_600_000.456;
+
+    @Test
+    void orientationMatchesExactArithmeticNearCollinear() {
+        Random random = new Random(18);
+        for (int n = 0; n < 100_000; n++) {
+            double ax = X0 + random.nextDouble() * 1000, ay = Y0 + random.nextDouble() * 1000;
+            double bx = X0 + random.nextDouble() * 1000, by = Y0 + random.nextDouble() * 1000;
+            // c在直线ab上取点后舍入，再挪动几个ulp，行列式的精确值非常接近0
+            double t = random.nextDouble() * 3 - 1;
+            double onLineX = ax + t * (bx - ax), onLineY = ay + t * (by - ay);
+            double cx = onLineX + Math.ulp(onLineX) * (random.nextInt(5) - 2);
+            double cy = onLineY + Math.ulp(onLineY) * (random.nextInt(5) - 2);
+            Assertions.assertEquals(exactSign(ax, ay, bx, by, cx, cy), GeometryPredicates.orientation(ax, ay, bx, by, cx, cy),
+                    () -> "(" + ax + ", " + ay + ") (" + bx + ", " + by + ") (" + cx + ", " + cy + ")");
+        }
+    }
+
+    @Test
+    void orientationWhereNaiveDeterminantIsWrong() {
+        // p在(X0, X0)附近按ulp逐格挪动，q、r在直线y = x上更远处。坐标差不能精确表示，
+        // 直接用浮点数计算行列式会判错一部分点的符号，这些点要靠精确计算
+        double qx = 2 * X0 + 24, rx = 4 * X0 + 48;
+        double ulp = Math.ulp(X0);
+        int naiveWrong = 0;
+        for (int i = 0; i < 64; i++) {
+            for (int j = 0; j < 64; j++) {
+                double px = X0 + i * ulp, py = X0 + j * ulp;
+                int exact = exactSign(px, py, qx, qx, rx, rx);
+                Assertions.assertEquals(exact, GeometryPredicates.orientation(px, py, qx, qx, rx, rx), "i=" + i + " j=" + j);
+                if ((int) Math.signum((px - rx) * (qx - rx) - (py - rx) * (qx - rx)) != exact) {
+                    naiveWrong++;
+                }
+            }
+        }
+        Assertions.assertTrue(naiveWrong > 0, "浮点计算没有判错的情况，测试没有覆盖精确计算");
+    }
+
+    @Test
+    void orientationOfExactlyCollinearPoints() {
+        // 0.25的倍数在这个量级可以精确表示，三点严格共线
+        for (int k = -4; k <= 8; k++) {
+            Assertions.assertEquals(0, GeometryPredicates.orientation(X0, Y0, X0 + 3, Y0 + 4, X0 + 0.75 * k, Y0 + k));
+        }
+        Assertions.assertEquals(1, GeometryPredicates.orientation(X0, Y0, X0 + 3, Y0 + 4, X0, Y0 + 1));
+        Assertions.assertEquals(-1, GeometryPredicates.orientation(X0, Y0, X0 + 3, Y0 + 4, X0 + 1, Y0));
+        Assertions.assertEquals(0, GeometryPredicates.orientation(X0, Y0, X0 + 3, Y0 + 4, Double.NaN, Y0));
+    }
+
+    @Test
+    void crossingSegments() {
+        Point p1 = new Point(X0, Y0), p2 = new Point(X0 + 10, Y0 + 10);
+        Point p3 = new Point(X0, Y0 + 10), p4 = new Point(X0 + 10, Y0);
+        Point intersection = GeometryPredicates.intersection(p1, p2, p3, p4);
+        Assertions.assertNotNull(intersection);
+        Assertions.assertEquals(X0 + 5, intersection.getX(), 1e-6);
+        Assertions.assertEquals(Y0 + 5, intersection.getY(), 1e-6);
+        Assertions.assertNull(GeometryPredicates.intersection(p1, p3, p2, p4));
+    }
+
+    @Test
+    void endpointOnSegmentReturnsSameObject() {
+        Point p1 = new Point(X0, Y0), p2 = new Point(X0 + 3, Y0 + 4);
+        Point onSegment = new Point(X0 + 1.5, Y0 + 2);
+        Point away = new Point(X0 + 5, Y0);
+        Assertions.assertSame(onSegment, GeometryPredicates.intersection(p1, p2, onSegment, away));
+        Assertions.assertSame(onSegment, GeometryPredicates.intersection(p1, p2, away, onSegment));
+        Assertions.assertSame(onSegment, GeometryPredicates.intersection(onSegment, away, p1, p2));
+        // 共用端点
+        Assertions.assertSame(p2, GeometryPredicates.intersection(p1, p2, p2, away));
+    }
+
+    @Test
+    void parallelAndCollinearReturnNull() {
+        Point p1 = new Point(X0, Y0), p2 = new Point(X0 + 3, Y0 + 4);
+        // 平行
+        Assertions.assertNull(GeometryPredicates.intersection(p1, p2, new Point(X0 + 1, Y0), new Point(X0 + 4, Y0 + 4)));
+        // 共线且重叠
+        Assertions.assertNull(GeometryPredicates.intersection(p1, p2, new Point(X0 + 1.5, Y0 + 2), new Point(X0 + 6, Y0 + 8)));
+        // 共线不重叠
+        Assertions.assertNull(GeometryPredicates.intersection(p1, p2, new Point(X0 + 4.5, Y0 + 6), new Point(X0 + 6, Y0 + 8)));
+        // 退化为点
+        Assertions.assertNull(GeometryPredicates.intersection(p1, p2, new Point(X0 + 1.5, Y0 + 2), new Point(X0 + 1.5, Y0 + 2)));
+    }
+
+    private static int exactSign(double ax, double ay, double bx, double by, double cx, double cy) {
+        BigDecimal acx = new BigDecimal(ax).subtract(new BigDecimal(cx));
+        BigDecimal bcy = new BigDecimal(by).subtract(new BigDecimal(cy));
+        BigDecimal acy = new BigDecimal(ay).subtract(new BigDecimal(cy));
+        BigDecimal bcx = new BigDecimal(bx).subtract(new BigDecimal(cx));
+        return acx.multiply(bcy).subtract(acy.multiply(bcx)).signum();
+    }
+}
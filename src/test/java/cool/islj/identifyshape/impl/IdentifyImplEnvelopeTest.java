@@ -0,0 +1,42 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Envelope;
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 外接矩形：按坐标数组计算的结果与按Point列表计算的结果相同
+ */
+class IdentifyImplEnvelopeTest {
+
+    private final IdentifyImpl identifyService = new IdentifyImpl();
+
+    @Test
+    void bufferEnvelopeMatchesPointList() {
+        Random random = new Random(11);
+        for (int n = 0; n < 200; n++) {
+            List<Point> points = new ArrayList<>();
+            double x = 1.2e7 + random.nextDouble() * 1e4, y = 5.6e6 + random.nextDouble() * 1e4;
+            int size = 1 + random.nextInt(300);
+            for (int i = 0; i < size; i++) {
+                x += random.nextGaussian() * 10;
+                y += random.nextGaussian() * 10;
+                points.add(new Point(x, y));
+            }
+            Assertions.assertEquals(identifyService.getEnvelope(points), identifyService.getEnvelope(PointBuffer.of(points)));
+        }
+    }
+
+    @Test
+    void singlePointAndEmpty() {
+        Envelope single = identifyService.getEnvelope(PointBuffer.of(List.of(new Point(3, -4))));
+        Assertions.assertEquals(new Envelope(3, -4, 3, -4), single);
+        Assertions.assertEquals(new Envelope(), identifyService.getEnvelope(new PointBuffer()));
+    }
+}
@@ -1,136 +1,148 @@
 package cool.islj.identifyshape.impl;
 
-import com.google.gson.Gson;
-import com.google.gson.internal.LinkedTreeMap;
 import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.RecognitionResult;
 import cool.islj.identifyshape.entry.Segment;
 import cool.islj.identifyshape.entry.Shape;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
-import org.junit.Before;
-import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
-import org.springframework.test.context.junit4.SpringRunner;
-
-import java.io.BufferedReader;
-import java.io.FileOutputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-
-@RunWith(SpringRunner.class)
-@SpringBootTest
-public class IdentifyImplTest {
-
-    private IdentifyImpl identifyService = new IdentifyImpl();
-
-    private final String TEST_DATA_FILE = "test/arrows.json";
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 
-    private final String OUTPUT_FILE_PATH = "D:/Code/test/result";
+/**
+ * 识别流程各阶段的输出通过{@link AsyncTraceWriter}写入同一个文件；后台写入线程异常结束时关闭不会阻塞
+ */
+class IdentifyImplTest {
 
-    private List<List<Point>> testData = new ArrayList<>();
+    private final IdentifyImpl identifyService = new IdentifyImpl();
 
-    private double pixelDistance = 0d;
+    @TempDir
+    Path tempDir;
 
-    @Before
-    public void before() throws Exception {
-        Resource resource = new ClassPathResource(TEST_DATA_FILE);
+    @Test
+    void traceRecordsEveryStage() throws IOException {
+        Sketch arrows = TestSketches.load("arrows").getFirst();
+        // 最后一幅同时有封闭图形和箭头
+        Sketch arrowHeads = TestSketches.load("arrowheads").getLast();
+        Path file = tempDir.resolve("trace.csv");
+        RecognitionResult arrowsResult, arrowHeadsResult;
+        AsyncTraceWriter writer = new AsyncTraceWriter(file);
+        try (writer) {
+            arrowsResult = identifyService.withTrace(writer.forRequest("arrows")).recognize(arrows);
+            arrowHeadsResult = identifyService.withTrace(writer.forRequest("arrowheads")).recognize(arrowHeads);
+        }
+        Assertions.assertEquals(0, writer.droppedCount());
+        Assertions.assertFalse(arrowHeadsResult.getShapes().isEmpty());
+        Assertions.assertFalse(arrowHeadsResult.getArrows().isEmpty());
+
+        List<String> lines = Files.readAllLines(file);
+        Assertions.assertEquals("request,stage,group,item,shape,index,x,y", lines.getFirst());
+        assertTrace(lines, "arrows", arrows, arrowsResult);
+        assertTrace(lines, "arrowheads", arrowHeads, arrowHeadsResult);
+    }
 
-        Gson gson = new Gson();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-            List jsonData = gson.fromJson(reader, List.class);
-            for (Object data : jsonData) {
-                if (data instanceof LinkedTreeMap<?, ?>) {
-                    List<?> coords = (List<?>) ((LinkedTreeMap<?, ?>) data).get("coord");
-                    pixelDistance = (double) ((LinkedTreeMap<?, ?>) data).get("distance");
-                    List<Point> points = new ArrayList<>();
-                    for (Object coord : coords) {
-                        if (coord instanceof List<?> && ((List<?>) coord).size() >= 2) {
-                            Point point = new Point(((List<Double>) coord).get(0), ((List<Double>) coord).get(1));
-                            points.add(point);
-                        }
-                    }
-                    testData.add(points);
-                }
-            }
+    @Test
+    void closeWhileInterruptedWritesEverything() throws IOException {
+        Path file = tempDir.resolve("trace.csv");
+        AsyncTraceWriter writer = new AsyncTraceWriter(file);
+        RecognitionTrace trace = writer.forRequest("interrupted");
+        for (int n = 0; n < 1000; n++) {
+            trace.stroke(n, PointBuffer.of(List.of(new Point(n, 0), new Point(n, 1))));
+        }
+        Thread.currentThread().interrupt();
+        try {
+            writer.close();
+        } finally {
+            Assertions.assertTrue(Thread.interrupted(), "close应保留中断状态");
         }
+        Assertions.assertEquals(0, writer.droppedCount());
+        Assertions.assertEquals(1 + 2000, Files.readAllLines(file).size());
     }
 
     @Test
-    public void testFlag() throws Exception {
-        List<Segment> allSegments = new ArrayList<>();
-        List<Point> allPoints = testData.stream().flatMap(Collection::stream).toList();
-        for (int i = 0; i < testData.size(); i++) {
-            List<Point> points = testData.get(i);
-            writeCsv(points, null, OUTPUT_FILE_PATH + "_originData_" + i + ".csv");
-            // 平滑
-            points = identifyService.smooth(points, pixelDistance);
-            writeCsv(points, null, OUTPUT_FILE_PATH + "_smooth_" + i + ".csv");
-            // 切割
-            List<Segment> segments = identifyService.split(points);
-            for (int j = 0; j < segments.size(); j++) {
-                Segment segment = segments.get(j);
-                identifyService.judgeStraightOrCurve(segment);
-                try {
-                    writeCsv(segment.getAllPoints(), segment.getShape(), OUTPUT_FILE_PATH + "_split_" + i + "_" + j + ".csv");
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+    void everyOfferIsWrittenOrCountedAcrossClose() throws Exception {
+        Path file = tempDir.resolve("trace.csv");
+        AsyncTraceWriter writer = new AsyncTraceWriter(file, 64);
+        AtomicLong offered = new AtomicLong();
+        CountDownLatch started = new CountDownLatch(4);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            RecognitionTrace trace = writer.forRequest("thread" + t);
+            threads.add(Thread.ofPlatform().start(() -> {
+                Point point = new Point(1, 2);
+                List<Segment> segments = List.of(new Segment(point, point, null, null, List.of(point), Shape.STRAIGHT));
+                for (int n = 0; n < 20_000; n++) {
+                    trace.segments(RecognitionTrace.Stage.SPLIT, n, segments);
+                    offered.incrementAndGet();
+                    if (n == 100) {
+                        started.countDown();
+                    }
                 }
-
-            }
-
-            Iterator<Segment> iterator = segments.iterator();
-            int j = 0;
-            while (iterator.hasNext()) {
-                Segment nextSegment = iterator.next();
-                identifyService.extendSegment(allPoints, nextSegment);
-                writeCsv(nextSegment.getAllPoints(), nextSegment.getShape(), OUTPUT_FILE_PATH + "_extent_" + i + "_" + j + ".csv");
-                j++;
-            }
-            allSegments.addAll(segments);
+            }));
         }
-        // 求交点，打断
-        List<Segment> newSegments = identifyService.curveIntersection(allSegments);
-        for (int j = 0; j < newSegments.size(); j++) {
-            Segment segment = newSegments.get(j);
-            writeCsv(segment.getAllPoints(), segment.getShape(), OUTPUT_FILE_PATH + "_interrupt_" + j + ".csv");
+        // 在各线程仍在放入记录时关闭
+        started.await();
+        writer.close();
+        for (Thread thread : threads) {
+            thread.join();
         }
-
-        Map<Point, List<Segment>> shapes = identifyService.constructShape(newSegments);
-        AtomicInteger shapeCount = new AtomicInteger();
-        shapes.values().forEach(segments -> {
-            List<Point> points = segments.stream().flatMap(segment -> segment.getAllPoints().stream()).distinct().toList();
-            try {
-                writeCsv(points, null, OUTPUT_FILE_PATH + "_" + shapeCount.get() + "_shape.csv");
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-            shapeCount.getAndIncrement();
-        });
+        Assertions.assertEquals(offered.get(), Files.readAllLines(file).size() - 1 + writer.droppedCount());
     }
 
-    public void writeCsv(List<Point> points, Shape shape, String filePath) throws Exception {
-        try (FileOutputStream fos = new FileOutputStream(filePath)) {
-            OutputStreamWriter osw = new OutputStreamWriter(fos, StandardCharsets.UTF_8);
-
-            CSVFormat csvFormat = CSVFormat.DEFAULT.withHeader("Longitude", "Latitude", "Shape");
-            CSVPrinter csvPrinter = new CSVPrinter(osw, csvFormat);
+    @Test
+    void closeReturnsAfterWriterThreadDied() throws Exception {
+        Path file = tempDir.resolve("trace.csv");
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        AsyncTraceWriter writer = new AsyncTraceWriter(file, 4);
+        Thread drain = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("recognition-trace") && !before.contains(thread))
+                .findFirst().orElseThrow();
+        // 后台线程提前结束，之后的记录占满队列
+        drain.interrupt();
+        drain.join();
+        RecognitionTrace trace = writer.forRequest("dead");
+        for (int n = 0; n < 10; n++) {
+            trace.stroke(n, PointBuffer.of(List.of(new Point(n, 0))));
+        }
+        Assertions.assertEquals(6, writer.droppedCount());
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), writer::close);
+    }
 
-            for (int i = 0; i < points.size(); i++) {
-                Point point = points.get(i);
-                csvPrinter.printRecord(point.getX(), point.getY(), shape == null ? "" : shape.name());
+    /**
+     * 每个阶段记录的点数与识别的输入、输出一致
+     */
+    private static void assertTrace(List<String> lines, String request, Sketch sketch, RecognitionResult result) {
+        Map<String, Integer> rows = new TreeMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] columns = line.split(",");
+            if (columns[0].equals(request)) {
+                rows.merge(columns[1], 1, Integer::sum);
             }
-            csvPrinter.flush();
-            csvPrinter.close();
         }
+        int strokePoints = sketch.getStrokes().stream().mapToInt(PointBuffer::size).sum();
+        Assertions.assertEquals(strokePoints, rows.get(RecognitionTrace.Stage.ORIGIN.name()), request);
+        Assertions.assertEquals(pointCount(result.getSegments()), rows.get(RecognitionTrace.Stage.CURVE_INTERSECTION.name()), request);
+        Assertions.assertTrue(rows.containsKey(RecognitionTrace.Stage.SPLIT.name()) && rows.containsKey(RecognitionTrace.Stage.EXTEND.name()), request);
+        int shapePoints = result.getShapes().values().stream().mapToInt(IdentifyImplTest::pointCount).sum();
+        Assertions.assertEquals(shapePoints, rows.getOrDefault(RecognitionTrace.Stage.CONSTRUCT_SHAPE.name(), 0), request);
+        int arrowPoints = result.getArrows().values().stream().mapToInt(IdentifyImplTest::pointCount).sum();
+        Assertions.assertEquals(arrowPoints, rows.getOrDefault(RecognitionTrace.Stage.FIND_ARROWS.name(), 0), request);
+    }
+
+    private static int pointCount(List<Segment> segments) {
+        return segments.stream().mapToInt(segment -> segment.getAllPoints().size()).sum();
     }
 }
@@ -0,0 +1,103 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 时间预算：总时长用完或线程被中断时整次识别停止，阶段超出上限时只结束这个阶段，两种情况都标记为不完整
+ */
+class RecognitionBudgetTest {
+
+    /**
+     * 同时有封闭图形和箭头
+     */
+    private final Sketch sketch = TestSketches.load("arrowheads").getLast();
+
+    @Test
+    void unlimitedBudgetIsComplete() {
+        RecognitionResult result = new IdentifyImpl().recognize(sketch, RecognitionBudget.of(Duration.ofDays(1)));
+        Assertions.assertTrue(result.isComplete());
+        Assertions.assertEquals(RegressionTest.canonical(new IdentifyImpl().recognize(sketch)), RegressionTest.canonical(result));
+    }
+
+    @Test
+    void exhaustedTotalStopsEveryStage() {
+        StageRecorder recorder = new StageRecorder();
+        RecognitionResult result = new IdentifyImpl(recorder).recognize(sketch, RecognitionBudget.of(Duration.ZERO));
+        Assertions.assertFalse(result.isComplete());
+        Assertions.assertTrue(result.getSegments().isEmpty());
+        Assertions.assertTrue(result.getShapes().isEmpty() && result.getArrows().isEmpty());
+        Assertions.assertTrue(recorder.outputs.isEmpty(), "总时长用完后不应再进入任何阶段: " + recorder.outputs);
+    }
+
+    @Test
+    void stageLimitOnlyEndsThatStage() {
+        RecognitionResult complete = new IdentifyImpl().recognize(sketch);
+        Assertions.assertFalse(complete.getShapes().isEmpty());
+        Assertions.assertFalse(complete.getArrows().isEmpty());
+
+        // 求交一条线段也不处理，之后的阶段仍然执行
+        StageRecorder recorder = new StageRecorder();
+        RecognitionResult result = new IdentifyImpl(recorder).recognize(sketch,
+                RecognitionBudget.UNLIMITED.withStageLimit(RecognitionListener.Stage.CURVE_INTERSECTION, Duration.ZERO));
+        Assertions.assertFalse(result.isComplete());
+        Assertions.assertTrue(result.getSegments().size() < complete.getSegments().size(), "未打断的线段应更少");
+        Assertions.assertTrue(recorder.outputs.containsKey(RecognitionListener.Stage.CONSTRUCT_SHAPE));
+        Assertions.assertTrue(recorder.outputs.containsKey(RecognitionListener.Stage.FIND_ARROWS));
+
+        // 只有查找箭头超出上限，封闭图形完整
+        result = new IdentifyImpl().recognize(sketch,
+                RecognitionBudget.of(Duration.ofDays(1)).withStageLimit(RecognitionListener.Stage.FIND_ARROWS, Duration.ZERO));
+        Assertions.assertFalse(result.isComplete());
+        Assertions.assertEquals(complete.getSegments().size(), result.getSegments().size());
+        Assertions.assertEquals(complete.getShapes().size(), result.getShapes().size());
+        Assertions.assertTrue(result.getArrows().isEmpty());
+
+        // 预处理超出上限时没有线段，但不影响后面的阶段
+        recorder = new StageRecorder();
+        result = new IdentifyImpl(recorder).recognize(sketch,
+                RecognitionBudget.UNLIMITED.withStageLimit(RecognitionListener.Stage.SMOOTH, Duration.ZERO));
+        Assertions.assertFalse(result.isComplete());
+        Assertions.assertTrue(result.getSegments().isEmpty());
+        Assertions.assertEquals(List.of(0L, 0L), recorder.outputs.get(RecognitionListener.Stage.PRUNE));
+        Assertions.assertTrue(recorder.outputs.containsKey(RecognitionListener.Stage.FIND_ARROWS));
+    }
+
+    @Test
+    void interruptStopsInterruptibleBudgetOnly() {
+        IdentifyImpl identify = new IdentifyImpl();
+        Thread.currentThread().interrupt();
+        try {
+            RecognitionResult interrupted = identify.recognize(sketch, RecognitionBudget.INTERRUPTIBLE);
+            Assertions.assertFalse(interrupted.isComplete());
+            Assertions.assertTrue(interrupted.getSegments().isEmpty());
+            Assertions.assertFalse(identify.recognize(sketch, RecognitionBudget.of(Duration.ofDays(1))).isComplete());
+            // 不带预算的识别不响应中断
+            Assertions.assertTrue(identify.recognize(sketch).isComplete());
+            Assertions.assertTrue(Thread.currentThread().isInterrupted(), "识别不应清除中断状态");
+        } finally {
+            Thread.interrupted();
+        }
+        Assertions.assertTrue(identify.recognize(sketch, RecognitionBudget.INTERRUPTIBLE).isComplete());
+    }
+
+    /**
+     * 记录每个阶段最后一次的输入、输出数量
+     */
+    private static final class StageRecorder implements RecognitionListener {
+
+        private final Map<Stage, List<Long>> outputs = new ConcurrentHashMap<>();
+
+        @Override
+        public void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+            outputs.put(stage, List.of(inputCount, outputCount));
+        }
+    }
+}
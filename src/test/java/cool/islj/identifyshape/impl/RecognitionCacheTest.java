@@ -0,0 +1,66 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class RecognitionCacheTest {
+
+    private final IdentifyImpl identifyService = new IdentifyImpl();
+
+    private final Sketch sketch = TestSketches.load("flag").getFirst();
+
+    @Test
+    void hitReturnsIndependentCopy() {
+        String expected = RegressionTest.canonical(identifyService.recognize(sketch));
+        RecognitionCache cache = new RecognitionCache(identifyService);
+
+        RecognitionResult first = cache.recognize(sketch);
+        Assertions.assertEquals(expected, RegressionTest.canonical(first));
+        // 调用方修改返回的结果，不影响之后的命中
+        for (Segment segment : first.getSegments()) {
+            for (Point point : segment.getAllPoints()) {
+                point.setX(point.getX() + 1000);
+            }
+            segment.setShape(null);
+        }
+        first.getShapes().values().forEach(List::clear);
+        first.getShapes().clear();
+        first.getArrows().clear();
+
+        RecognitionResult second = cache.recognize(sketch);
+        Assertions.assertEquals(1, cache.resultStats().hitCount());
+        Assertions.assertEquals(expected, RegressionTest.canonical(second));
+        Assertions.assertNotSame(first, second);
+    }
+
+    @Test
+    void copyKeepsSharedObjects() {
+        RecognitionResult result = new RecognitionCache(identifyService).recognize(sketch);
+        for (List<Segment> shape : result.getShapes().values()) {
+            for (Segment segment : shape) {
+                Assertions.assertSame(segment.getBeginPoint(), segment.getAllPoints().getFirst());
+                Assertions.assertSame(segment.getEndPoint(), segment.getAllPoints().getLast());
+            }
+        }
+    }
+
+    @Test
+    void strokesReusedWhenOneStrokeChanges() {
+        RecognitionCache cache = new RecognitionCache(identifyService);
+        cache.recognize(sketch);
+
+        Sketch changed = new Sketch(new ArrayList<>(sketch.getStrokes().subList(0, sketch.getStrokes().size() - 1)),
+                sketch.getPixelDistance());
+        Assertions.assertEquals(RegressionTest.canonical(identifyService.recognize(changed)),
+                RegressionTest.canonical(cache.recognize(changed)));
+        Assertions.assertEquals(0, cache.resultStats().hitCount());
+        Assertions.assertEquals(changed.getStrokes().size(), cache.strokeStats().hitCount());
+    }
+}
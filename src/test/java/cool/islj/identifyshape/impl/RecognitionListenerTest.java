@@ -0,0 +1,83 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 识别各阶段的回调：每笔依次平滑、切割，之后预筛选、求交、组合封闭图形、查找箭头各一次，前后阶段的数量相互衔接
+ */
+class RecognitionListenerTest {
+
+    private final List<Event> events = new ArrayList<>();
+
+    private final IdentifyImpl identify = new IdentifyImpl(new RecognitionListener() {
+        @Override
+        public void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+            Assertions.assertTrue(nanos >= 0);
+            events.add(new Event(stage, inputCount, outputCount, work));
+        }
+    });
+
+    @Test
+    void stagesFollowPipeline() {
+        int shapeCount = 0, arrowCount = 0;
+        for (String name : List.of("arrows", "arrowheads", "flag")) {
+            for (Sketch sketch : TestSketches.load(name)) {
+                events.clear();
+                RecognitionResult result = identify.recognize(sketch);
+                assertEvents(sketch, result);
+                shapeCount += result.getShapes().size();
+                arrowCount += result.getArrows().size();
+            }
+        }
+        // 各阶段的输出数量不全为0
+        Assertions.assertTrue(shapeCount > 0 && arrowCount > 0, shapeCount + " " + arrowCount);
+    }
+
+    /**
+     * 每笔的平滑、切割在前，之后的阶段各一次
+     */
+    private void assertEvents(Sketch sketch, RecognitionResult result) {
+        int strokeCount = sketch.getStrokes().size();
+        Assertions.assertEquals(2 * strokeCount + 4, events.size(), events.toString());
+        long splitSegments = 0;
+        for (int n = 0; n < strokeCount; n++) {
+            Event smooth = events.get(2 * n), split = events.get(2 * n + 1);
+            Assertions.assertEquals(RecognitionListener.Stage.SMOOTH, smooth.stage());
+            Assertions.assertEquals(RecognitionListener.Stage.SPLIT, split.stage());
+            Assertions.assertEquals(sketch.getStrokes().get(n).size(), smooth.input(), "第" + n + "笔");
+            Assertions.assertTrue(smooth.output() <= smooth.input(), "第" + n + "笔");
+            Assertions.assertEquals(smooth.output(), split.input(), "第" + n + "笔");
+            splitSegments += split.output();
+        }
+
+        Event prune = events.get(2 * strokeCount);
+        Event intersection = events.get(2 * strokeCount + 1);
+        Event shape = events.get(2 * strokeCount + 2);
+        Event arrow = events.get(2 * strokeCount + 3);
+        Assertions.assertEquals(RecognitionListener.Stage.PRUNE, prune.stage());
+        Assertions.assertEquals(RecognitionListener.Stage.CURVE_INTERSECTION, intersection.stage());
+        Assertions.assertEquals(RecognitionListener.Stage.CONSTRUCT_SHAPE, shape.stage());
+        Assertions.assertEquals(RecognitionListener.Stage.FIND_ARROWS, arrow.stage());
+
+        Assertions.assertEquals(strokeCount, prune.input());
+        Assertions.assertTrue(prune.output() <= prune.input(), prune.toString());
+        Assertions.assertEquals(splitSegments, intersection.input());
+        Assertions.assertEquals(result.getSegments().size(), intersection.output());
+        // 剔除的笔画不参与组合封闭图形
+        Assertions.assertTrue(shape.input() <= intersection.output(), shape + " / " + intersection);
+        Assertions.assertEquals(prune.output() == 0, shape.input() == intersection.output());
+        Assertions.assertEquals(result.getShapes().size(), shape.output());
+        Assertions.assertEquals(shape.output() > 0, shape.work() > 0, shape.toString());
+        Assertions.assertEquals(result.getSegments().size(), arrow.input());
+        Assertions.assertEquals(result.getArrows().size(), arrow.output());
+    }
+
+    private record Event(RecognitionListener.Stage stage, long input, long output, long work) {
+    }
+}
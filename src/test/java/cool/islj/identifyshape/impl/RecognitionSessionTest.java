@@ -0,0 +1,81 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 逐笔识别的会话：随机添加、撤销笔画，每一步的结果都与对剩下的笔画整体识别相同
+ */
+class RecognitionSessionTest {
+
+    private final IdentifyImpl identifyService = new IdentifyImpl();
+
+    @Test
+    void randomEditsMatchRecognize() {
+        List<Sketch> sketches = new ArrayList<>();
+        sketches.addAll(TestSketches.load("arrowheads"));
+        sketches.addAll(TestSketches.load("flag"));
+        Random random = new Random(6);
+        for (int s = 0; s < sketches.size(); s++) {
+            Sketch sketch = sketches.get(s);
+            List<List<Point>> pool = sketch.getStrokes().stream().map(stroke -> stroke.toPoints(0, stroke.size())).toList();
+            RecognitionSession session = new RecognitionSession(identifyService);
+            // 会话中的笔画，按添加顺序
+            Map<Integer, List<Point>> current = new LinkedHashMap<>();
+            for (int step = 0; step < 3 * pool.size(); step++) {
+                if (!current.isEmpty() && random.nextInt(3) == 0) {
+                    List<Integer> ids = new ArrayList<>(current.keySet());
+                    int id = ids.get(random.nextInt(ids.size()));
+                    session.removeStroke(id);
+                    current.remove(id);
+                } else {
+                    // 同一笔可以重复添加，重合的线段也要与整体识别一致
+                    List<Point> stroke = pool.get(random.nextInt(pool.size()));
+                    current.put(session.addStroke(stroke, sketch.getPixelDistance()), stroke);
+                }
+                RecognitionResult expected = identifyService.recognize(new ArrayList<>(current.values()), sketch.getPixelDistance());
+                RecognitionResult actual = session.getResult();
+                String message = "第" + s + "幅，第" + step + "步，" + current.size() + "笔";
+                Assertions.assertEquals(describe(expected.getSegments()), describe(actual.getSegments()), message);
+                Assertions.assertEquals(RegressionTest.canonical(expected), RegressionTest.canonical(actual), message);
+            }
+            // 全部撤销
+            for (int id : new ArrayList<>(current.keySet())) {
+                session.removeStroke(id);
+            }
+            Assertions.assertTrue(session.getResult().getSegments().isEmpty());
+        }
+    }
+
+    @Test
+    void removingUnknownStrokeFails() {
+        RecognitionSession session = new RecognitionSession(identifyService);
+        PointBuffer stroke = TestSketches.load("flag").getFirst().getStrokes().getFirst();
+        int id = session.addStroke(stroke.toPoints(0, stroke.size()), 1);
+        session.removeStroke(id);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> session.removeStroke(id));
+    }
+
+    private static List<String> describe(List<Segment> segments) {
+        List<String> texts = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            StringBuilder builder = new StringBuilder();
+            for (Point point : segment.getAllPoints()) {
+                builder.append(point.getX()).append(',').append(point.getY()).append(' ');
+            }
+            texts.add(builder.toString());
+        }
+        return texts;
+    }
+}
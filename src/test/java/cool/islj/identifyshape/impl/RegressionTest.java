@@ -0,0 +1,231 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * 回归测试：对语料目录中每个json文件里的所有草图运行完整的识别流程。
+ * <ul>
+ *     <li>封闭图形和箭头按规范顺序写成文本，与golden目录中记录的结果比较，不受线段顺序、方向和Map遍历顺序影响；</li>
+ *     <li>测量每个文件的吞吐量（幅/秒，取最快的一轮）和各阶段每轮的平均耗时、分配字节数，与基线文件比较，
+ *     吞吐量比基线下降超过阈值时失败。吞吐量与机器有关，基线放在本机固定的位置，不随构建目录清除；
+ *     此测试标记为performance，默认不运行，用mvn -Pperformance test运行。</li>
+ * </ul>
+ * 可用系统属性调整：
+ * <pre>
+ * regression.corpus     语料目录，默认src/main/resources/test
+ * regression.golden     golden输出目录，默认src/test/resources/golden
+ * regression.baseline   基线文件，默认~/.identifyshape/regression-baseline.properties，不存在时失败
+ * regression.threshold  允许的吞吐量下降比例，默认0.25
+ * regression.warmup     预热轮数，默认5
+ * regression.iterations 测量轮数，默认20
+ * regression.update     为true时用本次结果覆盖golden输出和基线
+ * </pre>
+ */
+class RegressionTest {
+
+    private static final Path CORPUS_DIR = Path.of(System.getProperty("regression.corpus", "src/main/resources/test"));
+
+    private static final Path GOLDEN_DIR = Path.of(System.getProperty("regression.golden", "src/test/resources/golden"));
+
+    private static final Path BASELINE = System.getProperty("regression.baseline") != null ? Path.of(System.getProperty("regression.baseline")) :
+            Path.of(System.getProperty("user.home"), ".identifyshape", "regression-baseline.properties");
+
+    private static final double THRESHOLD = Double.parseDouble(System.getProperty("regression.threshold", "0.25"));
+
+    private static final int WARMUP = Integer.getInteger("regression.warmup", 5);
+
+    private static final int ITERATIONS = Integer.getInteger("regression.iterations", 20);
+
+    private static final boolean UPDATE = Boolean.getBoolean("regression.update");
+
+    private final IdentifyImpl identifyService = new IdentifyImpl();
+
+    @Test
+    void goldenOutputs() throws IOException {
+        List<Executable> checks = new ArrayList<>();
+        for (Path corpus : corpora()) {
+            StringBuilder actual = new StringBuilder();
+            List<Sketch> sketches = read(corpus);
+            for (int i = 0; i < sketches.size(); i++) {
+                actual.append("# sketch ").append(i).append('\n');
+                actual.append(canonical(identifyService.recognize(sketches.get(i))));
+            }
+            Path golden = GOLDEN_DIR.resolve(corpus.getFileName().toString().replaceFirst("\\.json$", "") + ".golden");
+            if (UPDATE) {
+                Files.createDirectories(GOLDEN_DIR);
+                Files.writeString(golden, actual);
+                continue;
+            }
+            checks.add(() -> {
+                Assertions.assertTrue(Files.exists(golden), golden + "不存在，用-Dregression.update=true记录");
+                Assertions.assertEquals(Files.readString(golden), actual.toString(), corpus + "的识别结果与golden输出不同");
+            });
+        }
+        Assertions.assertAll(checks);
+    }
+
+    @Test
+    @Tag("performance")
+    void throughput() throws IOException {
+        Properties baseline = new Properties();
+        if (Files.exists(BASELINE)) {
+            try (Reader reader = Files.newBufferedReader(BASELINE, StandardCharsets.UTF_8)) {
+                baseline.load(reader);
+            }
+        } else {
+            Assertions.assertTrue(UPDATE, BASELINE + "不存在，用-Dregression.update=true在本机记录基线");
+        }
+        Properties current = new Properties();
+        List<String> regressions = new ArrayList<>();
+        for (Path corpus : corpora()) {
+            List<Sketch> sketches = read(corpus);
+            StageRecorder recorder = new StageRecorder();
+            IdentifyImpl measured = new IdentifyImpl(recorder);
+            for (int i = 0; i < WARMUP; i++) {
+                sketches.forEach(measured::recognize);
+            }
+            // 吞吐量按最快的一轮计算，减少GC和其他进程带来的波动
+            recorder.reset();
+            long fastest = Long.MAX_VALUE;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                sketches.forEach(measured::recognize);
+                fastest = Math.min(fastest, System.nanoTime() - start);
+            }
+
+            String name = corpus.getFileName().toString();
+            double throughput = sketches.size() / (fastest / 1e9);
+            current.setProperty(name + ".throughput", format(throughput));
+            for (RecognitionListener.Stage stage : RecognitionListener.Stage.values()) {
+                String key = name + "." + stage.name().toLowerCase(Locale.ROOT);
+                current.setProperty(key + ".nanos", Long.toString(recorder.nanos.getOrDefault(stage, 0L) / ITERATIONS));
+                current.setProperty(key + ".bytes", Long.toString(recorder.bytes.getOrDefault(stage, 0L) / ITERATIONS));
+            }
+
+            String recorded = baseline.getProperty(name + ".throughput");
+            if (recorded == null) {
+                if (!UPDATE) {
+                    regressions.add(name + "在基线中没有记录，用-Dregression.update=true重新记录基线");
+                }
+            } else if (throughput < Double.parseDouble(recorded) * (1 - THRESHOLD)) {
+                regressions.add(String.format(Locale.ROOT, "%s吞吐量%.1f/s低于基线%s/s的%.0f%%",
+                        name, throughput, recorded, (1 - THRESHOLD) * 100));
+            }
+        }
+        if (UPDATE) {
+            if (BASELINE.getParent() != null) {
+                Files.createDirectories(BASELINE.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(BASELINE, StandardCharsets.UTF_8)) {
+                current.store(writer, "识别吞吐量基线");
+            }
+        }
+        Assertions.assertTrue(regressions.isEmpty(), String.join("\n", regressions));
+    }
+
+    /**
+     * 识别结果的规范文本：每个封闭图形一行，列出各条边；每个箭头一行，先箭杆后两条边。
+     * 每条边取点序列正反两个方向中字典序较小的写法，边、行都排序，坐标保留到毫米
+     */
+    static String canonical(RecognitionResult result) {
+        List<String> lines = new ArrayList<>();
+        for (List<Segment> shape : result.getShapes().values()) {
+            lines.add("shape " + String.join(" | ", canonical(shape)));
+        }
+        for (Map.Entry<Segment, List<Segment>> arrow : result.getArrows().entrySet()) {
+            List<Segment> heads = new ArrayList<>(arrow.getValue());
+            heads.remove(arrow.getKey());
+            lines.add("arrow " + canonical(arrow.getKey()) + " -> " + String.join(" | ", canonical(heads)));
+        }
+        lines.sort(null);
+        StringBuilder builder = new StringBuilder();
+        lines.forEach(line -> builder.append(line).append('\n'));
+        return builder.toString();
+    }
+
+    private static List<String> canonical(List<Segment> segments) {
+        List<String> texts = new ArrayList<>(segments.size());
+        segments.forEach(segment -> texts.add(canonical(segment)));
+        texts.sort(null);
+        return texts;
+    }
+
+    private static String canonical(Segment segment) {
+        List<String> points = new ArrayList<>();
+        for (Point point : segment.getAllPoints()) {
+            points.add(format(point.getX()) + "," + format(point.getY()));
+        }
+        String forward = String.join(";", points);
+        String backward = String.join(";", points.reversed());
+        return forward.compareTo(backward) <= 0 ? forward : backward;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static List<Path> corpora() throws IOException {
+        try (Stream<Path> files = Files.list(CORPUS_DIR)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".json")).sorted().toList();
+        }
+    }
+
+    private static List<Sketch> read(Path corpus) throws IOException {
+        List<Sketch> sketches = new ArrayList<>();
+        try (StrokeReader reader = new StrokeReader(Files.newBufferedReader(corpus, StandardCharsets.UTF_8))) {
+            reader.forEachRemaining(sketches::add);
+        }
+        return sketches;
+    }
+
+    /**
+     * 累计各阶段的耗时和分配字节数。分配量为当前线程自上一次回调以来分配的字节数，
+     * 所以判断直线曲线等没有回调的步骤计入下一个阶段
+     */
+    private static final class StageRecorder implements RecognitionListener {
+
+        private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        final Map<Stage, Long> nanos = new EnumMap<>(Stage.class);
+
+        final Map<Stage, Long> bytes = new EnumMap<>(Stage.class);
+
+        private long allocated;
+
+        void reset() {
+            nanos.clear();
+            bytes.clear();
+            allocated = threads.getCurrentThreadAllocatedBytes();
+        }
+
+        @Override
+        public void stageCompleted(Stage stage, long stageNanos, long inputCount, long outputCount, long work) {
+            long now = threads.getCurrentThreadAllocatedBytes();
+            nanos.merge(stage, stageNanos, Long::sum);
+            bytes.merge(stage, now - allocated, Long::sum);
+            allocated = now;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.Config;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 点集简化策略：下标升序、保留首尾点，Douglas–Peucker的偏差不超过容差，分组算法与原来的平滑结果相同
+ */
+class SimplifierTest {
+
+    private static final double TOLERANCE = 5;
+
+    @Test
+    void keepsEndsInAscendingOrder() {
+        for (PointBuffer points : strokes()) {
+            for (Simplifier simplifier : List.of(Simplifier.WINDOW, Simplifier.DOUGLAS_PEUCKER, Simplifier.VISVALINGAM_WHYATT)) {
+                int[] kept = simplifier.simplify(points, TOLERANCE);
+                String message = simplifier.getClass().getSimpleName() + "，" + points.size() + "个点";
+                for (int i = 1; i < kept.length; i++) {
+                    Assertions.assertTrue(kept[i - 1] < kept[i], message + "：下标不是升序" + Arrays.toString(kept));
+                }
+                Assertions.assertEquals(points.size() - 1, kept[kept.length - 1], message);
+                // 分组算法在点数不超过一组时只保留最后一个点
+                if (simplifier != Simplifier.WINDOW || points.size() > Config.SMOOTH_INTERVAL_COUNT) {
+                    Assertions.assertEquals(0, kept[0], message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void douglasPeuckerStaysWithinTolerance() {
+        for (PointBuffer points : strokes()) {
+            int[] kept = Simplifier.DOUGLAS_PEUCKER.simplify(points, TOLERANCE);
+            for (int k = 1; k < kept.length; k++) {
+                for (int i = kept[k - 1] + 1; i < kept[k]; i++) {
+                    double deviation = distanceToLine(points, kept[k - 1], kept[k], i);
+                    Assertions.assertTrue(deviation <= TOLERANCE, "第" + i + "个点的偏差" + deviation);
+                }
+            }
+        }
+    }
+
+    @Test
+    void windowMatchesOriginalSmooth() {
+        for (PointBuffer points : strokes()) {
+            Assertions.assertArrayEquals(originalSmooth(points, TOLERANCE), Simplifier.WINDOW.simplify(points, TOLERANCE),
+                    points.size() + "个点");
+        }
+        // 识别时按像素距离换算阈值
+        IdentifyImpl identify = new IdentifyImpl();
+        for (Sketch sketch : TestSketches.load("arrows")) {
+            for (PointBuffer stroke : sketch.getStrokes()) {
+                int[] expected = originalSmooth(stroke, Config.DEVIATION_PIXEL * sketch.getPixelDistance());
+                PointBuffer smoothed = identify.smooth(stroke, sketch.getPixelDistance(), new PointBuffer());
+                Assertions.assertEquals(expected.length, smoothed.size());
+                for (int i = 0; i < expected.length; i++) {
+                    Assertions.assertEquals(stroke.x(expected[i]), smoothed.x(i));
+                    Assertions.assertEquals(stroke.y(expected[i]), smoothed.y(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    void shortInputs() {
+        PointBuffer points = new PointBuffer();
+        for (Simplifier simplifier : List.of(Simplifier.WINDOW, Simplifier.DOUGLAS_PEUCKER, Simplifier.VISVALINGAM_WHYATT)) {
+            Assertions.assertArrayEquals(new int[0], simplifier.simplify(points, TOLERANCE));
+        }
+        points.add(3, 4);
+        for (Simplifier simplifier : List.of(Simplifier.WINDOW, Simplifier.DOUGLAS_PEUCKER, Simplifier.VISVALINGAM_WHYATT)) {
+            Assertions.assertArrayEquals(new int[]{0}, simplifier.simplify(points, TOLERANCE));
+        }
+        points.add(3, 4);
+        Assertions.assertArrayEquals(new int[]{1}, Simplifier.WINDOW.simplify(points, TOLERANCE));
+        Assertions.assertArrayEquals(new int[]{0, 1}, Simplifier.DOUGLAS_PEUCKER.simplify(points, TOLERANCE));
+        Assertions.assertArrayEquals(new int[]{0, 1}, Simplifier.VISVALINGAM_WHYATT.simplify(points, TOLERANCE));
+    }
+
+    @Test
+    void visvalingamComparesAreas() {
+        // 底边长2、偏离3的点面积为3，小于容差的平方4，偏差超过容差也被删除
+        PointBuffer points = new PointBuffer();
+        points.add(0, 0);
+        points.add(1, 3);
+        points.add(2, 0);
+        Assertions.assertArrayEquals(new int[]{0, 2}, Simplifier.VISVALINGAM_WHYATT.simplify(points, 2));
+        // 底边长100、偏离0.1的点面积为5，大于4，几乎共线也保留
+        points = new PointBuffer();
+        points.add(0, 0);
+        points.add(50, 0.1);
+        points.add(100, 0);
+        Assertions.assertArrayEquals(new int[]{0, 1, 2}, Simplifier.VISVALINGAM_WHYATT.simplify(points, 2));
+    }
+
+    @Test
+    void pointReductionFiresNoEvents() {
+        List<RecognitionListener.Stage> stages = new ArrayList<>();
+        IdentifyImpl identify = new IdentifyImpl(new RecognitionListener() {
+            @Override
+            public void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+                stages.add(stage);
+            }
+        }, Simplifier.DOUGLAS_PEUCKER);
+        double reduction = identify.pointReduction(TestSketches.load("arrows").getFirst());
+        Assertions.assertTrue(reduction > 0 && reduction < 1, "去掉的比例" + reduction);
+        Assertions.assertTrue(stages.isEmpty(), stages.toString());
+    }
+
+    /**
+     * 引入简化策略之前IdentifyImpl#smooth的实现
+     */
+    private static int[] originalSmooth(PointBuffer originPoints, double threshold) {
+        IntList result = new IntList();
+        int size = originPoints.size();
+        double[] distances = new double[Config.SMOOTH_INTERVAL_COUNT];
+        int begin = 0, end;
+        while ((end = begin + Config.SMOOTH_INTERVAL_COUNT) < size) {
+            result.add(begin);
+            double beginX = originPoints.x(begin);
+            double beginY = originPoints.y(begin);
+            double dxSum = originPoints.x(end) - beginX;
+            double dySum = originPoints.y(end) - beginY;
+            double totalLength = GeometryKernels.length(dxSum, dySum);
+            int count = end - 1 - begin;
+            GeometryKernels.perpendicularDistances(originPoints.xs(), originPoints.ys(), begin + 1, count,
+                    beginX, beginY, dxSum, dySum, totalLength, distances);
+            boolean flag = false;
+            for (int k = 0; k < count; k++) {
+                if (distances[k] > threshold) {
+                    begin = begin + 1 + k;
+                    flag = true;
+                    break;
+                }
+            }
+            if (flag) {
+                continue;
+            }
+            begin = end - 1;
+        }
+        if (begin < size) {
+            result.add(size - 1);
+        }
+        return result.toArray();
+    }
+
+    /**
+     * 样例中的笔画，以及随机折线：包含重复点、原路折返和不满一组的短笔画
+     */
+    private static List<PointBuffer> strokes() {
+        List<PointBuffer> strokes = new ArrayList<>();
+        for (String name : List.of("arrows", "flag")) {
+            for (Sketch sketch : TestSketches.load(name)) {
+                strokes.addAll(sketch.getStrokes());
+            }
+        }
+        Random random = new Random(16);
+        for (int n = 0; n < 200; n++) {
+            PointBuffer points = new PointBuffer();
+            double x = 1.2e7, y = -5.6e6, heading = 0;
+            for (int i = random.nextInt(n < 20 ? 8 : 300); i >= 0; i--) {
+                points.add(x, y);
+                heading += random.nextGaussian() * (random.nextInt(10) == 0 ? 3 : 0.3);
+                double step = random.nextInt(10) == 0 ? 0 : random.nextDouble() * 10;
+                x += step * Math.cos(heading);
+                y += step * Math.sin(heading);
+            }
+            strokes.add(points);
+        }
+        return strokes;
+    }
+
+    /**
+     * @return 第i个点到from、to所在直线的距离，from、to重合时为到from的距离
+     */
+    private static double distanceToLine(PointBuffer points, int from, int to, int i) {
+        double dx = points.x(to) - points.x(from), dy = points.y(to) - points.y(from);
+        double px = points.x(i) - points.x(from), py = points.y(i) - points.y(from);
+        double length = Math.hypot(dx, dy);
+        return length == 0 ? Math.hypot(px, py) : Math.abs(dx * py - dy * px) / length;
+    }
+}
@@ -0,0 +1,192 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Envelope;
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.PointBuffer;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预筛选：孤立的简单笔画被剔除，剔除后的识别结果与不剔除时相同
+ */
+class StrokePrunerTest {
+
+    @Test
+    void prunedStrokesDoNotChangeResult() {
+        // 箭杆从(0, 0)到(1000, 0)，箭头两边的延长线在箭杆末端附近与箭杆相交。
+        // 查找箭头时斜率相近的相邻线段会被合并（不论是否相连），相邻笔画的斜率都相差较大
+        List<PointBuffer> strokes = new ArrayList<>();
+        // 箭杆末端右下方的竖线，在箭杆的查找范围内，但延长后的外接矩形与箭杆、箭头都不重叠
+        strokes.add(line(1080, -250, 1080, -150));
+        // 远离其他笔画的横线
+        strokes.add(line(100, 450, 400, 450));
+        strokes.add(line(855, -180, 997, -2.5));
+        strokes.add(line(0, 0, 1000, 0));
+        strokes.add(line(848, 180, 990, 2.5));
+        strokes.add(line(600, -450, 900, -450));
+
+        RecognitionResult result = assertSameAsUnpruned(strokes);
+        Assertions.assertEquals(1, result.getArrows().size());
+        // 剔除的笔画没有被打断，竖线是第1条线段，与箭杆末端的距离在查找范围内
+        Segment shaft = result.getArrows().keySet().iterator().next();
+        Segment nearHead = result.getSegments().getFirst();
+        double distance = Math.min(distance(shaft.getBeginPoint(), nearHead.getBeginPoint(), nearHead.getEndPoint()),
+                distance(shaft.getEndPoint(), nearHead.getBeginPoint(), nearHead.getEndPoint()));
+        Assertions.assertTrue(distance < IdentifyImpl.arrowSearchRadius(shaft), "竖线到箭杆末端的距离" + distance);
+
+        // 横线紧挨在箭杆之前，查找箭头时与箭杆合并，剔除的笔画仍要参与
+        strokes.add(3, strokes.remove(1));
+        assertSameAsUnpruned(strokes);
+    }
+
+    /**
+     * 竖线和两条横线被剔除，结果与不剔除时相同
+     */
+    private static RecognitionResult assertSameAsUnpruned(List<PointBuffer> strokes) {
+        Sketch sketch = new Sketch(strokes, 1);
+        AtomicLong pruned = new AtomicLong(-1);
+        IdentifyImpl identify = new IdentifyImpl(new RecognitionListener() {
+            @Override
+            public void stageCompleted(Stage stage, long nanos, long inputCount, long outputCount, long work) {
+                if (stage == Stage.PRUNE) {
+                    pruned.set(outputCount);
+                }
+            }
+        });
+        RecognitionResult result = identify.recognize(sketch);
+        Assertions.assertEquals(3, pruned.get(), "竖线和两条横线都应被剔除");
+        RecognitionResult expected = recognizeWithoutPruning(identify, sketch);
+        Assertions.assertEquals(describe(expected.getSegments()), describe(result.getSegments()));
+        Assertions.assertEquals(RegressionTest.canonical(expected), RegressionTest.canonical(result));
+        return result;
+    }
+
+    @Test
+    void touchingStrokesAreKept() {
+        // 两条直线的外接矩形重叠，都不能剔除
+        List<Segment> segments = new ArrayList<>();
+        segments.add(segment(0, 0, 10, 0));
+        segments.add(segment(10, 0, 20, 5));
+        segments.add(segment(100, 100, 110, 100));
+        boolean[] pruned = StrokePruner.prune(segments, new int[]{0, 1, 2, 3});
+        Assertions.assertArrayEquals(new boolean[]{false, false, true}, pruned);
+        // 切出多条线段的笔画不剔除
+        pruned = StrokePruner.prune(List.of(segments.get(2), segments.get(0), segments.get(1)), new int[]{0, 1, 3});
+        Assertions.assertArrayEquals(new boolean[]{true, false}, pruned);
+        // 没有线段的笔画
+        pruned = StrokePruner.prune(List.of(segments.get(2)), new int[]{0, 0, 1});
+        Assertions.assertArrayEquals(new boolean[]{false, true}, pruned);
+    }
+
+    @Test
+    void monotoneStopsAtNinetyDegrees() {
+        Assertions.assertTrue(StrokePruner.isMonotone(points(0, 0)));
+        Assertions.assertTrue(StrokePruner.isMonotone(points(0, 0, 1, 0)));
+        // 一次转90°
+        Assertions.assertFalse(StrokePruner.isMonotone(points(0, 0, 1, 0, 1, 1)));
+        // 两次转角合计略小于、略大于90°
+        double below = Math.PI / 4 - 1e-6, above = Math.PI / 4 + 1e-6;
+        Assertions.assertTrue(StrokePruner.isMonotone(turns(below, below)));
+        Assertions.assertFalse(StrokePruner.isMonotone(turns(above, above)));
+        // 左右来回转，按绝对值累计
+        Assertions.assertFalse(StrokePruner.isMonotone(turns(0.5, -0.5, 0.6)));
+        Assertions.assertTrue(StrokePruner.isMonotone(turns(0.5, -0.5)));
+    }
+
+    @Test
+    void zeroLengthStepIsNotMonotone() {
+        Assertions.assertFalse(StrokePruner.isMonotone(points(0, 0, 0, 0)));
+        Assertions.assertFalse(StrokePruner.isMonotone(points(0, 0, 1, 0, 1, 0, 2, 0)));
+        Assertions.assertFalse(StrokePruner.isMonotone(points(0, 0, 1, 0, 2, 0, 2, 0)));
+    }
+
+    /**
+     * 与IdentifyImpl#recognize相同的各阶段，但所有线段都参与求交和组合封闭图形
+     */
+    private static RecognitionResult recognizeWithoutPruning(IdentifyImpl identify, Sketch sketch) {
+        Envelope envelope = null;
+        for (PointBuffer stroke : sketch.getStrokes()) {
+            envelope = IdentifyImpl.union(envelope, identify.getEnvelope(stroke));
+        }
+        double extensionLength = identify.extensionLength(envelope);
+        List<Segment> extended = new ArrayList<>();
+        for (PointBuffer stroke : sketch.getStrokes()) {
+            for (Segment segment : identify.prepareStroke(stroke, sketch.getPixelDistance())) {
+                identify.extendSegment(segment, extensionLength);
+                extended.add(segment);
+            }
+        }
+        List<Segment> segments = identify.curveIntersection(extended);
+        Map<Point, List<Segment>> shapes = identify.constructShape(segments);
+        return new RecognitionResult(segments, shapes, identify.findArrows(segments, shapes));
+    }
+
+    private static List<String> describe(List<Segment> segments) {
+        List<String> texts = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            StringBuilder builder = new StringBuilder();
+            for (Point point : segment.getAllPoints()) {
+                builder.append(point.getX()).append(',').append(point.getY()).append(' ');
+            }
+            texts.add(builder.toString());
+        }
+        return texts;
+    }
+
+    /**
+     * 点p到线段ab的距离
+     */
+    private static double distance(Point p, Point a, Point b) {
+        double dx = b.getX() - a.getX(), dy = b.getY() - a.getY();
+        double t = Math.max(0, Math.min(1, ((p.getX() - a.getX()) * dx + (p.getY() - a.getY()) * dy) / (dx * dx + dy * dy)));
+        return Math.hypot(p.getX() - a.getX() - dx * t, p.getY() - a.getY() - dy * t);
+    }
+
+    /**
+     * 每隔约5取一个点的直线
+     */
+    private static PointBuffer line(double x1, double y1, double x2, double y2) {
+        PointBuffer points = new PointBuffer();
+        int count = (int) (Math.hypot(x2 - x1, y2 - y1) / 5) + 1;
+        for (int i = 0; i <= count; i++) {
+            double t = (double) i / count;
+            points.add(x1 + (x2 - x1) * t, y1 + (y2 - y1) * t);
+        }
+        return points;
+    }
+
+    private static Segment segment(double... coordinates) {
+        List<Point> points = points(coordinates);
+        return new Segment(points.getFirst(), points.getLast(), null, null, points, null);
+    }
+
+    private static List<Point> points(double... coordinates) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < coordinates.length; i += 2) {
+            points.add(new Point(coordinates[i], coordinates[i + 1]));
+        }
+        return points;
+    }
+
+    /**
+     * 从原点沿x轴出发、每段长1、依次转过给定角度的折线
+     */
+    private static List<Point> turns(double... angles) {
+        List<Point> points = new ArrayList<>(List.of(new Point(0, 0), new Point(1, 0)));
+        double heading = 0;
+        for (double angle : angles) {
+            heading += angle;
+            Point last = points.getLast();
+            points.add(new Point(last.getX() + Math.cos(heading), last.getY() + Math.sin(heading)));
+        }
+        return points;
+    }
+}
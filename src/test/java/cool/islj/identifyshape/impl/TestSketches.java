@@ -0,0 +1,40 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Sketch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试用的样例草图，从classpath下的test目录读取
+ */
+final class TestSketches {
+
+    private TestSketches() {
+    }
+
+    /**
+     * @param name 文件名，不含.json
+     * @return 文件中的所有草图
+     */
+    static List<Sketch> load(String name) {
+        String resource = "/test/" + name + ".json";
+        List<Sketch> sketches = new ArrayList<>();
+        try (InputStream in = TestSketches.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException(resource + "不存在");
+            }
+            try (StrokeReader reader = new StrokeReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                reader.forEachRemaining(sketches::add);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sketches;
+    }
+}
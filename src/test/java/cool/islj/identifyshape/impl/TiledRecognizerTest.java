@@ -0,0 +1,69 @@
+package cool.islj.identifyshape.impl;
+
+import cool.islj.identifyshape.entry.Point;
+import cool.islj.identifyshape.entry.RecognitionResult;
+import cool.islj.identifyshape.entry.Segment;
+import cool.islj.identifyshape.entry.Sketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分块识别与整体识别的结果相同：线段按顺序逐点相同，封闭图形和箭头的规范文本相同。
+ * 块的边长从小于一条线段到大于整个图层，覆盖线段跨越多块、箭杆查找范围跨越块边界和只有一块的情况
+ */
+class TiledRecognizerTest {
+
+    private static final double[] TILE_SIZES = {1_000, 50_000, 300_000, 1e9};
+
+    private final IdentifyImpl identifyService = new IdentifyImpl();
+
+    @Test
+    void arrowsMatchGlobalRecognition() {
+        assertSameAsGlobal("arrows");
+    }
+
+    @Test
+    void flagMatchesGlobalRecognition() {
+        assertSameAsGlobal("flag");
+    }
+
+    @Test
+    void arrowHeadsMatchGlobalRecognition() {
+        int arrows = assertSameAsGlobal("arrowheads");
+        Assertions.assertTrue(arrows > 0, "arrowheads中应能识别出箭头");
+    }
+
+    /**
+     * @return 整体识别出的箭头数
+     */
+    private int assertSameAsGlobal(String name) {
+        int arrows = 0;
+        List<Sketch> sketches = TestSketches.load(name);
+        for (int i = 0; i < sketches.size(); i++) {
+            RecognitionResult expected = identifyService.recognize(sketches.get(i));
+            arrows += expected.getArrows().size();
+            for (double tileSize : TILE_SIZES) {
+                RecognitionResult actual = new TiledRecognizer(identifyService, tileSize).recognize(sketches.get(i));
+                String message = name + "第" + i + "幅，块边长" + tileSize;
+                Assertions.assertEquals(describe(expected.getSegments()), describe(actual.getSegments()), message);
+                Assertions.assertEquals(RegressionTest.canonical(expected), RegressionTest.canonical(actual), message);
+            }
+        }
+        return arrows;
+    }
+
+    private static List<String> describe(List<Segment> segments) {
+        List<String> texts = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            StringBuilder builder = new StringBuilder();
+            for (Point point : segment.getAllPoints()) {
+                builder.append(point.getX()).append(',').append(point.getY()).append(' ');
+            }
+            texts.add(builder.toString());
+        }
+        return texts;
+    }
+}